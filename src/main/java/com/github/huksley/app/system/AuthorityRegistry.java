@@ -0,0 +1,80 @@
+package com.github.huksley.app.system;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Process-wide registry of interned authorities. Every authority gets stable (for this JVM) index,
+ * used by {@link AuthoritySet} as bit position.
+ *
+ * <pre>{@code
+ * GrantedAuthority admin = AuthorityRegistry.authority("ROLE_ADMIN");
+ * AuthoritySet roles = AuthoritySet.of("ROLE_USER", "ROLE_ADMIN");
+ * }</pre>
+ */
+public final class AuthorityRegistry {
+    private static final Map<String, Integer> index = new ConcurrentHashMap<>();
+
+    /**
+     * Copy on write, index is published only after authority is stored here.
+     */
+    private static volatile GrantedAuthority[] authorities = new GrantedAuthority[0];
+
+    public static final GrantedAuthority ROLE_AUTH_TOKEN = authority(SecurityConfigurer.ROLE_AUTH_TOKEN);
+    public static final GrantedAuthority ROLE_AUTH_PASSWORD = authority(SecurityConfigurer.ROLE_AUTH_PASSWORD);
+    public static final GrantedAuthority ROLE_AUTH_SYSTEM = authority(SecurityConfigurer.ROLE_AUTH_SYSTEM);
+    public static final GrantedAuthority ROLE_AUTH_APIKEY = authority(SecurityConfigurer.ROLE_AUTH_APIKEY);
+
+    private AuthorityRegistry() {
+    }
+
+    /**
+     * Returns index of authority, registering it if required.
+     */
+    public static int intern(String authority) {
+        Integer i = index.get(authority);
+        if (i != null) {
+            return i;
+        }
+
+        synchronized (AuthorityRegistry.class) {
+            i = index.get(authority);
+            if (i == null) {
+                GrantedAuthority[] l = Arrays.copyOf(authorities, authorities.length + 1);
+                l[l.length - 1] = new SimpleGrantedAuthority(authority);
+                authorities = l;
+                i = l.length - 1;
+                index.put(authority, i);
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Returns index of authority or -1 if it was never registered.
+     */
+    public static int indexOf(String authority) {
+        Integer i = index.get(authority);
+        return i != null ? i : -1;
+    }
+
+    /**
+     * Returns interned authority instance.
+     */
+    public static GrantedAuthority authority(String authority) {
+        int i = intern(authority);
+        return authorities[i];
+    }
+
+    public static GrantedAuthority get(int index) {
+        return authorities[index];
+    }
+
+    public static int size() {
+        return authorities.length;
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.huksley.app.system;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Immutable set of authorities backed by bitset of {@link AuthorityRegistry} indexes.
+ * Provides O(1) contains and allocation free iteration over interned authorities.
+ */
+public final class AuthoritySet extends AbstractSet<GrantedAuthority> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final AuthoritySet EMPTY = new AuthoritySet(new long[0]);
+
+    private final long[] bits;
+    private final int size;
+
+    private AuthoritySet(long[] bits) {
+        this.bits = bits;
+        int n = 0;
+        for (long b: bits) {
+            n += Long.bitCount(b);
+        }
+        this.size = n;
+    }
+
+    public static AuthoritySet of(String... authorities) {
+        Builder b = new Builder();
+        for (String a: authorities) {
+            b.add(a);
+        }
+        return b.build();
+    }
+
+    public static AuthoritySet of(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities instanceof AuthoritySet) {
+            return (AuthoritySet) authorities;
+        }
+        Builder b = new Builder();
+        for (GrantedAuthority a: authorities) {
+            b.add(a.getAuthority());
+        }
+        return b.build();
+    }
+
+    public boolean contains(String authority) {
+        return test(AuthorityRegistry.indexOf(authority));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof GrantedAuthority && contains(((GrantedAuthority) o).getAuthority());
+    }
+
+    boolean test(int i) {
+        return i >= 0 && (i >> 6) < bits.length && (bits[i >> 6] & (1L << i)) != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<GrantedAuthority> iterator() {
+        return new Iterator<GrantedAuthority>() {
+            int next = nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public GrantedAuthority next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                GrantedAuthority a = AuthorityRegistry.get(next);
+                next = nextSetBit(next + 1);
+                return a;
+            }
+        };
+    }
+
+    int nextSetBit(int from) {
+        int w = from >> 6;
+        if (w >= bits.length) {
+            return -1;
+        }
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == bits.length) {
+                return -1;
+            }
+            word = bits[w];
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof AuthoritySet) {
+            return Arrays.equals(bits, ((AuthoritySet) o).bits);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Indexes are valid only in this JVM, serialize as authority names.
+     */
+    private Object writeReplace() {
+        String[] l = new String[size];
+        int n = 0;
+        for (GrantedAuthority a: this) {
+            l[n++] = a.getAuthority();
+        }
+        return new SerializedForm(l);
+    }
+
+    private static class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] authorities;
+
+        SerializedForm(String[] authorities) {
+            this.authorities = authorities;
+        }
+
+        private Object readResolve() {
+            return AuthoritySet.of(authorities);
+        }
+    }
+
+    /**
+     * Mutable builder for {@link AuthoritySet}.
+     */
+    public static class Builder {
+        private long[] bits = new long[(AuthorityRegistry.size() >> 6) + 1];
+
+        public Builder add(String authority) {
+            return set(AuthorityRegistry.intern(authority));
+        }
+
+        public Builder add(GrantedAuthority authority) {
+            return add(authority.getAuthority());
+        }
+
+        public Builder remove(String authority) {
+            int i = AuthorityRegistry.indexOf(authority);
+            if (i >= 0 && (i >> 6) < bits.length) {
+                bits[i >> 6] &= ~(1L << i);
+            }
+            return this;
+        }
+
+        Builder set(int i) {
+            if ((i >> 6) >= bits.length) {
+                bits = Arrays.copyOf(bits, (i >> 6) + 1);
+            }
+            bits[i >> 6] |= 1L << i;
+            return this;
+        }
+
+        public AuthoritySet build() {
+            // Trim trailing empty words so equal sets have equal arrays
+            int n = bits.length;
+            while (n > 0 && bits[n - 1] == 0) {
+                n--;
+            }
+            return n == 0 ? EMPTY : new AuthoritySet(Arrays.copyOf(bits, n));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.huksley.app.system;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.access.expression.SecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
+import org.springframework.security.web.access.expression.WebSecurityExpressionRoot;
+
+/**
+ * Web security expressions (hasAuthority, hasRole etc.) checked directly against {@link AuthoritySet},
+ * instead of building Set of authority names for every request as {@link WebSecurityExpressionRoot} does.
+ * Role hierarchy is not supported.
+ */
+public class AuthoritySetExpressionHandler extends DefaultWebSecurityExpressionHandler {
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    @Override
+    protected SecurityExpressionOperations createSecurityExpressionRoot(Authentication authentication, FilterInvocation fi) {
+        return new Root((WebSecurityExpressionRoot) super.createSecurityExpressionRoot(authentication, fi));
+    }
+
+    /**
+     * Same properties and methods as {@link WebSecurityExpressionRoot}, whose authority checks are final.
+     */
+    public static class Root implements SecurityExpressionOperations {
+        public final boolean permitAll = true;
+        public final boolean denyAll = false;
+        public final String read = "read";
+        public final String write = "write";
+        public final String create = "create";
+        public final String delete = "delete";
+        public final String admin = "administration";
+        public final HttpServletRequest request;
+
+        private final WebSecurityExpressionRoot delegate;
+
+        private AuthoritySet authorities;
+
+        Root(WebSecurityExpressionRoot delegate) {
+            this.delegate = delegate;
+            this.request = delegate.request;
+        }
+
+        /**
+         * No copy for token and API key authentication, which already keep AuthoritySet
+         */
+        AuthoritySet authorities() {
+            if (authorities == null) {
+                Authentication auth = delegate.getAuthentication();
+                authorities = auth != null && auth.getAuthorities() != null ? AuthoritySet.of(auth.getAuthorities()) : AuthoritySet.EMPTY;
+            }
+            return authorities;
+        }
+
+        @Override
+        public boolean hasAuthority(String authority) {
+            return authorities().contains(authority);
+        }
+
+        @Override
+        public boolean hasAnyAuthority(String... authorities) {
+            for (String a: authorities) {
+                if (hasAuthority(a)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasRole(String role) {
+            return hasAuthority(role.startsWith(ROLE_PREFIX) ? role : ROLE_PREFIX + role);
+        }
+
+        @Override
+        public boolean hasAnyRole(String... roles) {
+            for (String r: roles) {
+                if (hasRole(r)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean hasIpAddress(String ipAddress) {
+            return delegate.hasIpAddress(ipAddress);
+        }
+
+        public Object getPrincipal() {
+            return delegate.getPrincipal();
+        }
+
+        @Override
+        public Authentication getAuthentication() {
+            return delegate.getAuthentication();
+        }
+
+        @Override
+        public boolean permitAll() {
+            return true;
+        }
+
+        @Override
+        public boolean denyAll() {
+            return false;
+        }
+
+        @Override
+        public boolean isAnonymous() {
+            return delegate.isAnonymous();
+        }
+
+        @Override
+        public boolean isAuthenticated() {
+            return delegate.isAuthenticated();
+        }
+
+        @Override
+        public boolean isRememberMe() {
+            return delegate.isRememberMe();
+        }
+
+        @Override
+        public boolean isFullyAuthenticated() {
+            return delegate.isFullyAuthenticated();
+        }
+
+        @Override
+        public boolean hasPermission(Object target, Object permission) {
+            return delegate.hasPermission(target, permission);
+        }
+
+        @Override
+        public boolean hasPermission(Object targetId, String targetType, Object permission) {
+            return delegate.hasPermission(targetId, targetType, permission);
+        }
+    }
+}
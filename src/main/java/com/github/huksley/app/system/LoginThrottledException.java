@@ -0,0 +1,14 @@
+package com.github.huksley.app.system;
+
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Too many login attempts for user or client address.
+ */
+public class LoginThrottledException extends AuthenticationException {
+    private static final long serialVersionUID = 1L;
+
+    public LoginThrottledException(String msg) {
+        super(msg);
+    }
+}
@@ -1,5 +1,8 @@
 package com.github.huksley.app.system;
 
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.boot.system.ApplicationPid;
@@ -215,4 +218,69 @@ public class MDC {
 	public MDCInstance sysprop(String... systemProperties) {		
 		return new MDCInstance().sysprop(systemProperties);
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Снимок MDC и контекста безопасности текущего потока, для передачи в другие потоки.
+	 */
+	public static class Snapshot {
+		private final Map<String, String> mdc = org.slf4j.MDC.getCopyOfContextMap();
+		private final SecurityContext security = SecurityContextHolder.getContext();
+		
+		/**
+		 * Выполняет задачу с сохраненным контекстом, затем восстанавливает контекст потока.
+		 */
+		public <T> T call(Callable<T> task) throws Exception {
+			Map<String, String> prevMdc = org.slf4j.MDC.getCopyOfContextMap();
+			SecurityContext prevSecurity = SecurityContextHolder.getContext();
+			set(mdc, security);
+			try {
+				return task.call();
+			} finally {
+				set(prevMdc, prevSecurity);
+			}
+		}
+		
+		private static void set(Map<String, String> mdc, SecurityContext security) {
+			if (mdc != null) {
+				org.slf4j.MDC.setContextMap(mdc);
+			} else {
+				org.slf4j.MDC.clear();
+			}
+			SecurityContextHolder.setContext(security);
+		}
+	}
+	
+	/**
+	 * Запоминает контекст текущего потока.
+	 */
+	public static Snapshot capture() {
+		return new Snapshot();
+	}
+	
+	/**
+	 * Оборачивает задачу для выполнения в другом потоке с контекстом текущего.
+	 */
+	public static Runnable wrap(Runnable r) {
+		Snapshot s = capture();
+		return () -> {
+			try {
+				s.call(() -> {
+					r.run();
+					return null;
+				});
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+	
+	/**
+	 * Оборачивает задачу для выполнения в другом потоке с контекстом текущего.
+	 */
+	public static <T> Callable<T> wrap(Callable<T> c) {
+		Snapshot s = capture();
+		return () -> s.call(c);
+	}
+}
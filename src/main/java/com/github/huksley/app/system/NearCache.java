@@ -0,0 +1,193 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Two tier cache: bounded in-process L1 in front of shared {@link NearCacheStore} L2.
+ * Values are stored in L2 using Java serialization. Failures of L2 are logged and treated as misses.
+ * Both tiers and invalidation messages use string form of the key, so invalidation is a single lookup.
+ */
+public class NearCache extends AbstractValueAdaptingCache {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final Cache<String, Object> l1;
+    private final NearCacheStore l2;
+    private final long ttl;
+    private final NearCacheManager manager;
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+
+    public NearCache(NearCacheManager manager, String name, Cache<String, Object> l1, NearCacheStore l2, long ttl, MeterRegistry registry) {
+        super(true);
+        this.manager = manager;
+        this.name = name;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.ttl = ttl;
+        this.l1Hits = registry.counter("cache.near.requests", "cache", name, "tier", "l1", "result", "hit");
+        this.l2Hits = registry.counter("cache.near.requests", "cache", name, "tier", "l2", "result", "hit");
+        this.misses = registry.counter("cache.near.requests", "cache", name, "tier", "l2", "result", "miss");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l1;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object v = l1.getIfPresent(key(key));
+        if (v != null) {
+            l1Hits.increment();
+            return v;
+        }
+        v = loadL2(key);
+        if (v != null) {
+            l2Hits.increment();
+            l1.put(key(key), v);
+            return v;
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        boolean[] loaded = new boolean[1];
+        try {
+            Object v = l1.get(key(key), () -> {
+                loaded[0] = true;
+                Object l = loadL2(key);
+                if (l != null) {
+                    l2Hits.increment();
+                    return l;
+                }
+                misses.increment();
+                l = toStoreValue(valueLoader.call());
+                storeL2(key, l);
+                return l;
+            });
+            if (!loaded[0]) {
+                l1Hits.increment();
+            }
+            return (T) fromStoreValue(v);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        Object v = toStoreValue(value);
+        l1.put(key(key), v);
+        storeL2(key, v);
+        manager.publishEvict(name, key(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        Object existing = lookup(key);
+        if (existing != null) {
+            return toValueWrapper(existing);
+        }
+        put(key, value);
+        return null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        l1.invalidate(key(key));
+        try {
+            l2.evict(name, key(key));
+        } catch (RuntimeException e) {
+            log.warn("Failed to evict {} from L2 cache {}: {}", key, name, e.toString());
+        }
+        manager.publishEvict(name, key(key));
+    }
+
+    @Override
+    public void clear() {
+        l1.invalidateAll();
+        try {
+            l2.clear(name);
+        } catch (RuntimeException e) {
+            log.warn("Failed to clear L2 cache {}: {}", name, e.toString());
+        }
+        manager.publishClear(name);
+    }
+
+    /**
+     * Invalidates L1 only, on message from other node.
+     */
+    void invalidateLocal(String key) {
+        if (key == null) {
+            l1.invalidateAll();
+        } else {
+            l1.invalidate(key);
+        }
+    }
+
+    String key(Object key) {
+        return String.valueOf(key);
+    }
+
+    Object loadL2(Object key) {
+        try {
+            byte[] b = l2.get(name, key(key));
+            return b != null ? deserialize(b) : null;
+        } catch (RuntimeException e) {
+            log.warn("Failed to read {} from L2 cache {}: {}", key, name, e.toString());
+            return null;
+        }
+    }
+
+    void storeL2(Object key, Object value) {
+        try {
+            l2.put(name, key(key), serialize(value), ttl);
+        } catch (RuntimeException e) {
+            log.warn("Failed to store {} in L2 cache {}: {}", key, name, e.toString());
+        }
+    }
+
+    static byte[] serialize(Object value) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(bos)) {
+            os.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can`t serialize " + value.getClass() + ": " + e, e);
+        }
+        return bos.toByteArray();
+    }
+
+    static Object deserialize(byte[] b) {
+        try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(b))) {
+            return is.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Can`t deserialize cached value: " + e, e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.huksley.app.system;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Two tier cache when spring.cache.type=redis.
+ * L2 is Redis, or in-memory stand-in if redis.cache.l2=memory.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.cache.type", havingValue = "redis")
+public class NearCacheConfig {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Bean
+    public NearCacheStore nearCacheStore(ObjectProvider<JedisPool> pool) {
+        if ("memory".equals(env.getProperty("redis.cache.l2", "redis"))) {
+            log.info("Using in-memory L2 cache");
+            return new NearCacheStoreMemory();
+        }
+        NearCacheStoreRedis s = new NearCacheStoreRedis(pool.getObject(), env.getProperty("redis.cache.prefix", "cache:"), env.getProperty("redis.cache.channel", "cache:invalidate"));
+        s.start();
+        return s;
+    }
+
+    @Bean
+    public CacheManager cacheManager(NearCacheStore store, ObjectProvider<MeterRegistry> registry) {
+        return new NearCacheManager(store, env, registry.getIfAvailable());
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.huksley.app.system;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.Environment;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Creates {@link NearCache} on demand. Per cache settings:
+ *
+ * <pre>
+ * cache.NAME.size - L1 entries, default redis.cache.size
+ * cache.NAME.ttl - L2 TTL (seconds), default redis.cache.expiration
+ * cache.NAME.l1.ttl - L1 TTL (seconds), default is L2 TTL
+ * </pre>
+ *
+ * Updates are announced with invalidation messages so other nodes drop their L1 copies.
+ */
+public class NearCacheManager implements CacheManager {
+    public static final String CLEAR_ALL = "*";
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final NearCacheStore store;
+    private final Environment env;
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, NearCache> caches = new ConcurrentHashMap<>();
+
+    public NearCacheManager(NearCacheStore store, Environment env, MeterRegistry registry) {
+        this.store = store;
+        this.env = env;
+        this.registry = registry != null ? registry : new SimpleMeterRegistry();
+        store.subscribe(this::onMessage);
+    }
+
+    @Override
+    public NearCache getCache(String name) {
+        return caches.computeIfAbsent(name, this::create);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    protected NearCache create(String name) {
+        long size = env.getProperty("cache." + name + ".size", Long.class, env.getProperty("redis.cache.size", Long.class, 10000L));
+        long ttl = env.getProperty("cache." + name + ".ttl", Long.class, env.getProperty("redis.cache.expiration", Long.class, 300L));
+        long l1ttl = env.getProperty("cache." + name + ".l1.ttl", Long.class, ttl);
+        CacheBuilder<Object, Object> b = CacheBuilder.newBuilder().maximumSize(size).recordStats();
+        if (l1ttl > 0) {
+            b.expireAfterWrite(l1ttl, TimeUnit.SECONDS);
+        }
+        Cache<String, Object> l1 = b.build();
+        GuavaCacheMetrics.monitor(registry, l1, name, "tier", "l1");
+        log.info("Created cache {}, L1 size {} ttl {} s, L2 ttl {} s", name, size, l1ttl, ttl);
+        return new NearCache(this, name, l1, store, ttl, registry);
+    }
+
+    void publishEvict(String cache, String key) {
+        publish(nodeId + "\nE\n" + cache + "\n" + key);
+    }
+
+    void publishClear(String cache) {
+        publish(nodeId + "\nC\n" + cache + "\n");
+    }
+
+    void publish(String message) {
+        try {
+            store.publish(message);
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish cache invalidation: {}", e.toString());
+        }
+    }
+
+    /**
+     * Message is node \n type \n cache \n key, or CLEAR_ALL.
+     */
+    void onMessage(String message) {
+        if (CLEAR_ALL.equals(message)) {
+            caches.values().forEach(c -> c.invalidateLocal(null));
+            return;
+        }
+
+        String[] l = message.split("\n", 4);
+        if (l.length < 4 || l[0].equals(nodeId)) {
+            return;
+        }
+        NearCache c = caches.get(l[2]);
+        if (c != null) {
+            c.invalidateLocal(l[1].equals("C") ? null : l[3]);
+        }
+    }
+}
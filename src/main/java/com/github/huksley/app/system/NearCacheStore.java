@@ -0,0 +1,24 @@
+package com.github.huksley.app.system;
+
+import java.util.function.Consumer;
+
+/**
+ * Second tier (shared) storage for {@link NearCacheManager} and channel for L1 invalidation messages.
+ */
+public interface NearCacheStore {
+
+    byte[] get(String cache, String key);
+
+    void put(String cache, String key, byte[] value, long ttlSeconds);
+
+    void evict(String cache, String key);
+
+    void clear(String cache);
+
+    /**
+     * Sends invalidation message to all nodes (including this one).
+     */
+    void publish(String message);
+
+    void subscribe(Consumer<String> listener);
+}
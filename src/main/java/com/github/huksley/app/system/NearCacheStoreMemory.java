@@ -0,0 +1,69 @@
+package com.github.huksley.app.system;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-memory second tier, for tests and deployments without Redis.
+ * Instances shared between several {@link NearCacheManager} behave like separate nodes.
+ */
+public class NearCacheStoreMemory implements NearCacheStore {
+    static class Entry {
+        final byte[] value;
+        final long expiresAt;
+
+        Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    final Map<String, Map<String, Entry>> caches = new ConcurrentHashMap<>();
+
+    final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    Map<String, Entry> cache(String cache) {
+        return caches.computeIfAbsent(cache, n -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public byte[] get(String cache, String key) {
+        Map<String, Entry> m = cache(cache);
+        Entry e = m.get(key);
+        if (e != null && e.expiresAt != 0 && e.expiresAt < System.currentTimeMillis()) {
+            m.remove(key, e);
+            return null;
+        }
+        return e != null ? e.value : null;
+    }
+
+    @Override
+    public void put(String cache, String key, byte[] value, long ttlSeconds) {
+        cache(cache).put(key, new Entry(value, ttlSeconds > 0 ? System.currentTimeMillis() + ttlSeconds * 1000 : 0));
+    }
+
+    @Override
+    public void evict(String cache, String key) {
+        cache(cache).remove(key);
+    }
+
+    @Override
+    public void clear(String cache) {
+        cache(cache).clear();
+    }
+
+    @Override
+    public void publish(String message) {
+        for (Consumer<String> l: listeners) {
+            l.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+}
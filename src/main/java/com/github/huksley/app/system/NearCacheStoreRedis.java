@@ -0,0 +1,104 @@
+package com.github.huksley.app.system;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * Redis second tier. Entries are stored as prefix + cache + ":" + key,
+ * invalidations are sent over pub/sub channel.
+ */
+public class NearCacheStoreRedis implements NearCacheStore {
+    private final JedisPool pool;
+    private final String prefix;
+    private final String channel;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private RedisSubscriber subscriber;
+
+    public NearCacheStoreRedis(JedisPool pool, String prefix, String channel) {
+        this.pool = pool;
+        this.prefix = prefix;
+        this.channel = channel;
+    }
+
+    public void start() {
+        subscriber = new RedisSubscriber(pool, channel, j -> {
+            // Anything could change while disconnected
+            for (Consumer<String> l: listeners) {
+                l.accept(NearCacheManager.CLEAR_ALL);
+            }
+        }, (channel, message) -> {
+            for (Consumer<String> l: listeners) {
+                l.accept(message);
+            }
+        }).start();
+    }
+
+    public void close() {
+        if (subscriber != null) {
+            subscriber.stop();
+        }
+    }
+
+    byte[] key(String cache, String key) {
+        return (prefix + cache + ":" + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] get(String cache, String key) {
+        try (Jedis j = pool.getResource()) {
+            return j.get(key(cache, key));
+        }
+    }
+
+    @Override
+    public void put(String cache, String key, byte[] value, long ttlSeconds) {
+        try (Jedis j = pool.getResource()) {
+            if (ttlSeconds > 0) {
+                j.setex(key(cache, key), (int) ttlSeconds, value);
+            } else {
+                j.set(key(cache, key), value);
+            }
+        }
+    }
+
+    @Override
+    public void evict(String cache, String key) {
+        try (Jedis j = pool.getResource()) {
+            j.del(key(cache, key));
+        }
+    }
+
+    @Override
+    public void clear(String cache) {
+        try (Jedis j = pool.getResource()) {
+            ScanParams params = new ScanParams().match(prefix + cache + ":*").count(1000);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> r = j.scan(cursor, params);
+                if (!r.getResult().isEmpty()) {
+                    j.del(r.getResult().toArray(new String[0]));
+                }
+                cursor = r.getStringCursor();
+            } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        }
+    }
+
+    @Override
+    public void publish(String message) {
+        try (Jedis j = pool.getResource()) {
+            j.publish(channel, message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.huksley.app.system;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * Shared Redis connection pool. Lazy, and pool connects only on first use,
+ * so Redis is not required unless some feature is configured to use it.
+ */
+@Configuration
+public class RedisConfig {
+    @Autowired
+    Environment env;
+
+    @Bean(destroyMethod = "close")
+    @Lazy
+    public JedisPool jedisPool() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(env.getProperty("redis.pool.max", Integer.class, 16));
+        return new JedisPool(config, env.getProperty("redis.host", "localhost"), env.getProperty("redis.port", Integer.class, 6379));
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.huksley.app.system;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * Keeps Redis channel subscription in background thread, reconnecting on failures.
+ * Optional init callback runs on every (re)connect before subscribing, i.e. to load state missed while disconnected.
+ */
+public class RedisSubscriber {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    private final JedisPool pool;
+    private final String channel;
+    private final Consumer<Jedis> init;
+    private final BiConsumer<String, String> listener;
+    private volatile boolean running = true;
+
+    private final JedisPubSub pubsub = new JedisPubSub() {
+        @Override
+        public void onMessage(String channel, String message) {
+            try {
+                listener.accept(channel, message);
+            } catch (RuntimeException e) {
+                log.warn("Failed to process message on {}: {}", channel, e.toString());
+            }
+        }
+    };
+
+    public RedisSubscriber(JedisPool pool, String channel, Consumer<Jedis> init, BiConsumer<String, String> listener) {
+        this.pool = pool;
+        this.channel = channel;
+        this.init = init;
+        this.listener = listener;
+    }
+
+    public RedisSubscriber start() {
+        Thread t = new Thread(this::listen, "redis-subscriber-" + channel);
+        t.setDaemon(true);
+        t.start();
+        return this;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (pubsub.isSubscribed()) {
+                pubsub.unsubscribe();
+            }
+        } catch (Exception e) {
+            log.trace("Failed to unsubscribe", e);
+        }
+    }
+
+    void listen() {
+        while (running) {
+            try (Jedis j = pool.getResource()) {
+                if (init != null) {
+                    init.accept(j);
+                }
+                j.subscribe(pubsub, channel);
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("Subscription to {} failed, retrying: {}", channel, e.toString());
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
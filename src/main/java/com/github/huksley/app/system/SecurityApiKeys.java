@@ -0,0 +1,286 @@
+package com.github.huksley.app.system;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Long lived API keys for machine clients, passed as X-API-Key header. Only SHA-256 digests of keys
+ * are configured, as name:sha256-hex:ROLES lines in security.apikey.file (reloaded on change)
+ * or ; separated in security.apikey.keys. Lookup digests key with per thread state and probes open addressing
+ * table, returning prebuilt authentication without allocation.
+ *
+ * To create new key:
+ *
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=com.github.huksley.app.system.SecurityApiKeys -Dexec.args="NAME USER,ADMIN"
+ * </pre>
+ */
+@Component
+public class SecurityApiKeys {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    static final int DIGEST = 32;
+
+    @Autowired
+    Environment env;
+
+    /**
+     * Authentication of API key, immutable and shared by all requests with the same key.
+     */
+    public static final class ApiKeyAuthentication extends AbstractAuthenticationToken {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final AuthoritySet authorities;
+
+        ApiKeyAuthentication(String name, AuthoritySet authorities) {
+            super(null);
+            this.name = name;
+            this.authorities = authorities;
+            super.setAuthenticated(true);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Object getPrincipal() {
+            return name;
+        }
+
+        @Override
+        public Object getCredentials() {
+            return null;
+        }
+
+        @Override
+        public Collection<GrantedAuthority> getAuthorities() {
+            return authorities;
+        }
+
+        @Override
+        public void setAuthenticated(boolean authenticated) {
+            throw new IllegalArgumentException("API key authentication is immutable");
+        }
+
+        @Override
+        public void setDetails(Object details) {
+            throw new IllegalArgumentException("API key authentication is immutable");
+        }
+    }
+
+    /**
+     * Open addressing table, probe by first 8 bytes of digest, digests stored in flat array.
+     */
+    static final class Index {
+        final long[] probes;
+        final byte[] digests;
+        final ApiKeyAuthentication[] entries;
+        final int mask;
+
+        Index(List<byte[]> digests, List<ApiKeyAuthentication> entries) {
+            int slots = Integer.highestOneBit(Math.max(digests.size() * 2, 8) - 1) << 1;
+            this.mask = slots - 1;
+            this.probes = new long[slots];
+            this.digests = new byte[slots * DIGEST];
+            this.entries = new ApiKeyAuthentication[slots];
+            for (int i = 0; i < digests.size(); i++) {
+                byte[] d = digests.get(i);
+                long p = probe(d);
+                int s = (int) (p ^ (p >>> 32)) & mask;
+                while (this.entries[s] != null) {
+                    s = (s + 1) & mask;
+                }
+                this.probes[s] = p;
+                System.arraycopy(d, 0, this.digests, s * DIGEST, DIGEST);
+                this.entries[s] = entries.get(i);
+            }
+        }
+
+        ApiKeyAuthentication get(byte[] d) {
+            long p = probe(d);
+            for (int s = (int) (p ^ (p >>> 32)) & mask; entries[s] != null; s = (s + 1) & mask) {
+                if (probes[s] == p && equals(d, s * DIGEST)) {
+                    return entries[s];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compares all bytes regardless of first difference.
+         */
+        boolean equals(byte[] d, int offset) {
+            int r = 0;
+            for (int i = 0; i < DIGEST; i++) {
+                r |= d[i] ^ digests[offset + i];
+            }
+            return r == 0;
+        }
+
+        static long probe(byte[] d) {
+            long p = 0;
+            for (int i = 0; i < 8; i++) {
+                p = (p << 8) | (d[i] & 0xff);
+            }
+            return p;
+        }
+    }
+
+    static final class ThreadState {
+        final MessageDigest sha;
+        final byte[] out = new byte[DIGEST];
+
+        ThreadState() {
+            try {
+                sha = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    final ThreadStates<ThreadState> states = new ThreadStates<>(ThreadState::new);
+
+    volatile Index index = new Index(new ArrayList<>(), new ArrayList<>());
+
+    Path file;
+
+    volatile long fileModified;
+
+    @PostConstruct
+    public void init() {
+        String f = env.getProperty("security.apikey.file");
+        file = f != null && !f.isEmpty() ? Paths.get(f) : null;
+        reload();
+    }
+
+    /**
+     * Reads keys and swaps index.
+     */
+    public synchronized void reload() {
+        List<byte[]> digests = new ArrayList<>();
+        List<ApiKeyAuthentication> entries = new ArrayList<>();
+        for (String line: env.getProperty("security.apikey.keys", "").split(";")) {
+            parse(line, digests, entries);
+        }
+        if (file != null && Files.exists(file)) {
+            try {
+                fileModified = Files.getLastModifiedTime(file).toMillis();
+                for (String line: Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    parse(line, digests, entries);
+                }
+            } catch (IOException e) {
+                log.warn("Can`t read API keys from {}: {}", file, e.toString());
+                return;
+            }
+        }
+        index = new Index(digests, entries);
+        log.info("Loaded {} API keys", digests.size());
+    }
+
+    void parse(String line, List<byte[]> digests, List<ApiKeyAuthentication> entries) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        String[] l = line.split(":", 3);
+        byte[] d;
+        try {
+            d = l.length >= 2 ? BaseEncoding.base16().lowerCase().decode(l[1].trim().toLowerCase()) : null;
+        } catch (IllegalArgumentException e) {
+            d = null;
+        }
+        if (d == null || d.length != DIGEST) {
+            log.warn("Invalid API key line, expected name:sha256-hex:ROLES: {}", l[0]);
+            return;
+        }
+        AuthoritySet.Builder b = new AuthoritySet.Builder();
+        for (String r: (l.length > 2 ? l[2] : "USER").split("\\,")) {
+            r = r.trim();
+            if (!r.isEmpty()) {
+                b.add(r.startsWith(SecurityConfigurer.ROLE_PREFIX) ? r : SecurityConfigurer.ROLE_PREFIX + r);
+            }
+        }
+        b.add(SecurityConfigurer.ROLE_AUTH_APIKEY);
+        digests.add(d);
+        entries.add(new ApiKeyAuthentication(l[0].trim(), b.build()));
+    }
+
+    @Scheduled(fixedDelayString = "${security.apikey.reload:60000}")
+    public void checkFile() {
+        try {
+            if (file != null && Files.exists(file) && Files.getLastModifiedTime(file).toMillis() != fileModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warn("Can`t check API keys file {}: {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Returns authentication for key or null if key is unknown.
+     */
+    public ApiKeyAuthentication lookup(CharSequence key) {
+        ThreadState st = states.acquire();
+        try {
+            MessageDigest sha = st.sha;
+            sha.reset();
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                if (c > 127) {
+                    // Keys are ASCII
+                    return null;
+                }
+                sha.update((byte) c);
+            }
+            try {
+                sha.digest(st.out, 0, DIGEST);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            return index.get(st.out);
+        } finally {
+            states.release(st);
+        }
+    }
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        if (args.length < 1) {
+            System.err.println("Usage: SecurityApiKeys NAME [ROLES]");
+            System.exit(1);
+        }
+        byte[] b = new byte[32];
+        new SecureRandom().nextBytes(b);
+        String key = Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+        byte[] d = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.US_ASCII));
+        System.out.println("Key (give to client): " + key);
+        System.out.println("Configuration line:   " + args[0] + ":" + BaseEncoding.base16().lowerCase().encode(d) + ":" + (args.length > 1 ? args[1] : "USER"));
+    }
+}
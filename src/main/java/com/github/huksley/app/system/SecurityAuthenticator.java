@@ -11,4 +11,19 @@ public interface SecurityAuthenticator {
     Authentication authenticate(SecurityLoginProvider logins, Authentication unauth) throws AuthenticationException;
     
     boolean supports(Class<?> authentication);
+
+    /**
+     * Name for per authenticator settings, security.auth.NAME.threads, .queue, .timeout, .breaker.failures, .breaker.open
+     */
+    default String getName() {
+        return "default";
+    }
+
+    /**
+     * Call in bounded executor with timeout and circuit breaker ({@link SecurityAuthenticatorAsync}),
+     * otherwise on request thread.
+     */
+    default boolean isAsync() {
+        return true;
+    }
 }
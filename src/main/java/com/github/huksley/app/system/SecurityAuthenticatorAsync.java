@@ -0,0 +1,270 @@
+package com.github.huksley.app.system;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Calls {@link SecurityAuthenticator} in its own bounded executor (bulkhead), waits at most timeout
+ * and fails fast while backend is failing (circuit breaker). Concurrent checks of the same credentials
+ * are coalesced, so only one reaches the backend.
+ */
+public class SecurityAuthenticatorAsync {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SecurityAuthenticator auth;
+    private final ThreadPoolExecutor executor;
+    private final long timeout;
+    final CircuitBreaker breaker;
+    final ConcurrentMap<HashCode, Flight> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * Single backend call, shared by all callers with same credentials.
+     */
+    class Flight extends FutureTask<Authentication> {
+        final HashCode key;
+
+        Flight(HashCode key, SecurityLoginProvider logins, Authentication unauth) {
+            super(() -> auth.authenticate(logins, unauth));
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            inflight.remove(key, this);
+        }
+    }
+
+    /**
+     * Opens after N consecutive backend failures, then lets single trial call through after open interval.
+     * Every allowed call gets {@link Permit}, which must be settled on every exit path, so trial is never lost.
+     */
+    static class CircuitBreaker {
+        private final int threshold;
+        private final long openInterval;
+        private int failures;
+        private long openUntil;
+        private boolean trial;
+
+        /**
+         * Allowed call, settled once with success, failure or release (outcome not known, i.e. call not made).
+         */
+        class Permit {
+            final boolean trial;
+            private boolean settled;
+
+            Permit(boolean trial) {
+                this.trial = trial;
+            }
+
+            void success() {
+                synchronized (CircuitBreaker.this) {
+                    if (settle()) {
+                        failures = 0;
+                    }
+                }
+            }
+
+            void failure() {
+                synchronized (CircuitBreaker.this) {
+                    if (settle()) {
+                        failures++;
+                        if (failures >= threshold) {
+                            openUntil = System.currentTimeMillis() + openInterval;
+                        }
+                    }
+                }
+            }
+
+            void release() {
+                synchronized (CircuitBreaker.this) {
+                    settle();
+                }
+            }
+
+            private boolean settle() {
+                if (settled) {
+                    return false;
+                }
+                settled = true;
+                if (trial) {
+                    CircuitBreaker.this.trial = false;
+                }
+                return true;
+            }
+        }
+
+        CircuitBreaker(int threshold, long openInterval) {
+            this.threshold = threshold;
+            this.openInterval = openInterval;
+        }
+
+        /**
+         * Permit for call or null if circuit is open
+         */
+        synchronized Permit allow() {
+            if (failures < threshold) {
+                return new Permit(false);
+            }
+            if (!trial && System.currentTimeMillis() >= openUntil) {
+                trial = true;
+                return new Permit(true);
+            }
+            return null;
+        }
+
+        synchronized boolean isOpen() {
+            return failures >= threshold;
+        }
+    }
+
+    public SecurityAuthenticatorAsync(SecurityAuthenticator auth, Environment env) {
+        this.auth = auth;
+        String p = "security.auth." + auth.getName() + ".";
+        int threads = env.getProperty(p + "threads", Integer.class, env.getProperty("security.auth.async.threads", Integer.class, 16));
+        int queue = env.getProperty(p + "queue", Integer.class, env.getProperty("security.auth.async.queue", Integer.class, 64));
+        this.timeout = env.getProperty(p + "timeout", Long.class, env.getProperty("security.auth.async.timeout", Long.class, 5000L));
+        this.breaker = new CircuitBreaker(
+            env.getProperty(p + "breaker.failures", Integer.class, env.getProperty("security.auth.async.breaker.failures", Integer.class, 5)),
+            env.getProperty(p + "breaker.open", Long.class, env.getProperty("security.auth.async.breaker.open", Long.class, 30000L)));
+
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(queue, 1)), r -> {
+            Thread t = new Thread(r, "auth-" + auth.getName() + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        log.info("Authenticator {}: {} threads, queue {}, timeout {} ms", auth.getName(), threads, queue, timeout);
+    }
+
+    public Authentication authenticate(SecurityLoginProvider logins, Authentication unauth) throws AuthenticationException {
+        HashCode key = key(unauth);
+        Flight existing = inflight.get(key);
+        // Completed flight is removed shortly, result is not shared with later callers
+        if (existing != null && !existing.isDone()) {
+            return join(existing, unauth);
+        }
+
+        // Only leader calls backend, so only leader takes permit (and possibly trial)
+        CircuitBreaker.Permit permit = breaker.allow();
+        if (permit == null) {
+            throw new AuthenticationServiceException("Authentication backend " + auth.getName() + " is unavailable");
+        }
+        try {
+            Flight f = new Flight(key, logins, unauth);
+            existing = inflight.compute(key, (k, v) -> v == null || v.isDone() ? f : v);
+            if (existing != f) {
+                permit.release();
+                return join(existing, unauth);
+            }
+            try {
+                executor.execute(f);
+            } catch (RejectedExecutionException e) {
+                inflight.remove(key, f);
+                throw new AuthenticationServiceException("Authentication backend " + auth.getName() + " is busy");
+            }
+
+            try {
+                Authentication result = f.get(timeout, TimeUnit.MILLISECONDS);
+                permit.success();
+                return result;
+            } catch (TimeoutException e) {
+                f.cancel(true);
+                permit.failure();
+                throw new AuthenticationServiceException("Authentication backend " + auth.getName() + " timed out after " + timeout + " ms");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (isBackendFailure(cause)) {
+                    permit.failure();
+                } else {
+                    permit.success();
+                }
+                throw unwrap(cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted", e);
+        } catch (CancellationException e) {
+            throw new AuthenticationServiceException("Authentication backend " + auth.getName() + " call cancelled");
+        } finally {
+            // No-op if already settled
+            permit.release();
+        }
+    }
+
+    /**
+     * Waits for call made by other caller, outcome is recorded by that caller. Flight is not cancelled on timeout, it is owned by leader.
+     */
+    Authentication join(Flight f, Authentication unauth) {
+        log.debug("Joining in-flight authentication of {}", unauth.getName());
+        try {
+            return copy(f.get(timeout, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException | CancellationException e) {
+            throw new AuthenticationServiceException("Authentication backend " + auth.getName() + " timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    static boolean isBackendFailure(Throwable cause) {
+        return !(cause instanceof AuthenticationException) || cause instanceof AuthenticationServiceException;
+    }
+
+    AuthenticationException unwrap(Throwable cause) {
+        if (cause instanceof AuthenticationException) {
+            return (AuthenticationException) cause;
+        }
+        return new AuthenticationServiceException("Authentication backend " + auth.getName() + " failed: " + cause, cause);
+    }
+
+    public boolean isOpen() {
+        return breaker.isOpen();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static HashCode key(Authentication unauth) {
+        String password = unauth.getCredentials() != null ? unauth.getCredentials().toString() : "";
+        return Hashing.sha256().newHasher()
+            .putString(unauth.getName(), StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(password, StandardCharsets.UTF_8)
+            .hash();
+    }
+
+    /**
+     * Coalesced callers get own copy, since caller sets details and erases credentials.
+     */
+    static Authentication copy(Authentication a) {
+        if (a.getClass() == UsernamePasswordAuthenticationToken.class) {
+            return new UsernamePasswordAuthenticationToken(a.getPrincipal(), a.getCredentials(), a.getAuthorities());
+        }
+        return a;
+    }
+}
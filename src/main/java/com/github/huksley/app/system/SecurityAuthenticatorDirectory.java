@@ -0,0 +1,119 @@
+package com.github.huksley.app.system;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Users from file based {@link UserDirectory}. Index is built from security.auth.directory.source
+ * if missing or older than source, and reopened when index file changes (i.e. rebuilt by command line tool).
+ */
+@Component
+@ConditionalOnProperty(name = "security.auth.type", havingValue = "directory")
+public class SecurityAuthenticatorDirectory implements SecurityAuthenticator {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    SecurityPasswordHasher hasher;
+
+    Path source;
+
+    Path index;
+
+    volatile UserDirectory directory;
+
+    volatile long indexModified;
+
+    String dummyHash;
+
+    @PostConstruct
+    public void init() throws IOException {
+        source = Paths.get(env.getProperty("security.auth.directory.source", "users.txt"));
+        index = Paths.get(env.getProperty("security.auth.directory.index", source + ".idx"));
+        if (!Files.exists(index) || (Files.exists(source) && Files.getLastModifiedTime(source).compareTo(Files.getLastModifiedTime(index)) > 0)) {
+            rebuild();
+        } else {
+            reopen();
+        }
+        dummyHash = hasher.encode("dummy");
+    }
+
+    /**
+     * Builds index from source and swaps it in.
+     *
+     * @return number of users
+     */
+    public synchronized int rebuild() throws IOException {
+        long start = System.currentTimeMillis();
+        int n = UserDirectory.build(source, index);
+        log.info("Built user directory index {} with {} users in {} ms", index, n, System.currentTimeMillis() - start);
+        reopen();
+        return n;
+    }
+
+    synchronized void reopen() throws IOException {
+        long modified = Files.getLastModifiedTime(index).toMillis();
+        directory = UserDirectory.open(index);
+        indexModified = modified;
+        log.info("Opened user directory {}, {} users", index, directory.size());
+    }
+
+    @Scheduled(fixedDelayString = "${security.auth.directory.reload:60000}")
+    public void checkIndex() {
+        try {
+            if (Files.exists(index) && Files.getLastModifiedTime(index).toMillis() != indexModified) {
+                reopen();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to reopen user directory {}: {}", index, e.toString());
+        }
+    }
+
+    public UserDirectory getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public Authentication authenticate(SecurityLoginProvider logins, Authentication unauth) throws AuthenticationException {
+        String name = unauth.getName();
+        String password = unauth.getCredentials() != null ? unauth.getCredentials().toString() : "";
+        UserDirectory.Entry u = directory.lookup(name);
+        if (u == null) {
+            hasher.matches(name, password, dummyHash);
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        if (!hasher.matches(name, password, u.getHash())) {
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        log.info("Logged in {}", name);
+        return new UsernamePasswordAuthenticationToken(name, password, u.getRoles());
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return authentication.equals(UsernamePasswordAuthenticationToken.class);
+    }
+
+    @Override
+    public String getName() {
+        return "directory";
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+/**
+ * Users with bcrypt hashed passwords from configuration:
+ *
+ * <pre>
+ * security.auth.hashed.users = alice,bob
+ * security.auth.hashed.user.alice.password = $2a$10$...
+ * security.auth.hashed.user.alice.roles = USER,ADMIN
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "security.auth.type", havingValue = "hashed")
+public class SecurityAuthenticatorHashed implements SecurityAuthenticator {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    SecurityPasswordHasher hasher;
+
+    static class User {
+        final String hash;
+        final List<GrantedAuthority> roles;
+
+        User(String hash, List<GrantedAuthority> roles) {
+            this.hash = hash;
+            this.roles = roles;
+        }
+    }
+
+    Map<String, User> users;
+
+    /**
+     * Verified for unknown users, so response time does not reveal which users exist
+     */
+    String dummyHash;
+
+    @PostConstruct
+    public void init() {
+        Map<String, User> m = new HashMap<>();
+        for (String name: env.getProperty("security.auth.hashed.users", "").split("\\,")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            String hash = env.getProperty("security.auth.hashed.user." + name + ".password");
+            if (hash == null) {
+                throw new IllegalStateException("No security.auth.hashed.user." + name + ".password");
+            }
+            List<GrantedAuthority> roles = new ArrayList<>();
+            for (String r: env.getProperty("security.auth.hashed.user." + name + ".roles", "USER").split("\\,")) {
+                roles.add(AuthorityRegistry.authority("ROLE_" + r.trim()));
+            }
+            m.put(name, new User(hash, Collections.unmodifiableList(roles)));
+        }
+        users = m;
+        dummyHash = hasher.encode("dummy");
+        log.info("Loaded {} users", users.size());
+    }
+
+    @Override
+    public Authentication authenticate(SecurityLoginProvider logins, Authentication unauth) throws AuthenticationException {
+        String name = unauth.getName();
+        String password = unauth.getCredentials() != null ? unauth.getCredentials().toString() : "";
+        User u = users.get(name);
+        if (u == null) {
+            hasher.matches(name, password, dummyHash);
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        if (!hasher.matches(name, password, u.hash)) {
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        log.info("Logged in {}", name);
+        return new UsernamePasswordAuthenticationToken(name, password, u.roles);
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return authentication.equals(UsernamePasswordAuthenticationToken.class);
+    }
+
+    @Override
+    public String getName() {
+        return "hashed";
+    }
+}
@@ -1,22 +1,31 @@
 package com.github.huksley.app.system;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 /**
- * Test auth (single user with USER and ADMIN role)
+ * Test auth (single user with USER and ADMIN role).
+ * For load testing, security.auth.test.latency (ms, plus random up to .jitter) is added to every call,
+ * and .failure fraction of calls fail as if backend is down.
  */
 @Component
 @ConditionalOnProperty(name = "security.auth.type", havingValue = "test", matchIfMissing = true)
@@ -25,25 +34,41 @@ public class SecurityAuthenticatorTest implements SecurityAuthenticator {
 	
 	@Autowired
 	Environment env;
+
+	String testUser;
+	String testPassword;
+	List<GrantedAuthority> testRoles;
+	long latency;
+	long jitter;
+	double failure;
+
+	/**
+	 * Reads settings once, not on every login.
+	 */
+	@PostConstruct
+	public void init() {
+	    testUser = env.getProperty("security.auth.test.user", "test");
+	    testPassword = env.getProperty("security.auth.test.password", "123");
+	    ArrayList<GrantedAuthority> roles = new ArrayList<>();
+	    for (String r: env.getProperty("security.auth.test.roles", "USER,ADMIN").split("\\,")) {
+	        roles.add(AuthorityRegistry.authority("ROLE_" + r.trim()));
+	    }
+	    testRoles = Collections.unmodifiableList(roles);
+	    latency = env.getProperty("security.auth.test.latency", Long.class, 0L);
+	    jitter = env.getProperty("security.auth.test.latency.jitter", Long.class, 0L);
+	    failure = env.getProperty("security.auth.test.failure", Double.class, 0.0);
+	}
 	
     @Override
     public Authentication authenticate(SecurityLoginProvider logins, Authentication unauth) throws AuthenticationException {
         String name = unauth.getName();
         String password = unauth.getCredentials().toString();
         log.info("Logging in {}", name);
+        simulateBackend();
         Authentication auth = null;
         
-        String testUser = env.getProperty("security.auth.test.user", "test");
-        String testPassword = env.getProperty("security.auth.test.password", "123");
-        String testRoles = env.getProperty("security.auth.test.roles", "USER,ADMIN");
-        
-        if (name.equals(testUser) && password.equals(testPassword)) {
-        	ArrayList<GrantedAuthority> roles = new ArrayList<>();
-            for (String r: testRoles.split("\\,")) {
-                roles.add(new SimpleGrantedAuthority("ROLE_" + r.trim()));
-            }
-                
-            auth = new UsernamePasswordAuthenticationToken(name, password, roles);
+        if (name.equals(testUser) && MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), testPassword.getBytes(StandardCharsets.UTF_8))) {
+            auth = new UsernamePasswordAuthenticationToken(name, password, testRoles);
         }
         
         if (auth != null && !auth.isAuthenticated()) {
@@ -57,6 +82,29 @@ public class SecurityAuthenticatorTest implements SecurityAuthenticator {
         return auth;
     }
 
+    void simulateBackend() {
+        long latency = this.latency;
+        if (jitter > 0) {
+            latency += ThreadLocalRandom.current().nextLong(jitter);
+        }
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AuthenticationServiceException("Interrupted");
+            }
+        }
+        if (failure > 0 && ThreadLocalRandom.current().nextDouble() < failure) {
+            throw new AuthenticationServiceException("Simulated backend failure");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "test";
+    }
+
     @Override
     public boolean supports(Class<?> authentication) {
         return authentication.equals(UsernamePasswordAuthenticationToken.class);
@@ -4,17 +4,14 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.time.Clock;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.List;
 import java.util.StringTokenizer;
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
-import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -42,6 +39,7 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.security.access.intercept.RunAsUserToken;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
@@ -57,22 +55,25 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.*;
 import org.springframework.security.web.authentication.logout.LogoutHandler;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.security.web.savedrequest.HttpSessionRequestCache;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
-import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtException;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.impl.compression.GzipCompressionCodec;
 import lombok.Data;
 
 /**
@@ -93,16 +94,61 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
 
     public static final String HEADER_AUTH = "X-Auth-Token";
     public static final String COOKIE_AUTH = "AuthToken";
+    public static final String HEADER_API_KEY = "X-API-Key";
     public static final String ROLE_PREFIX = "ROLE_";
     public static final String ROLE_AUTH_TOKEN = "ROLE_AUTH_TOKEN";
     public static final String ROLE_AUTH_SYSTEM = "ROLE_AUTH_SYSTEM";
     public static final String ROLE_AUTH_PASSWORD = "ROLE_AUTH_PASSWORD";
+    public static final String ROLE_AUTH_APIKEY = "ROLE_AUTH_APIKEY";
+
+    /**
+     * Token formats, v1 is gzipped JWT with roles in aud, v2 is plain JWT with roles bitmap
+     */
+    public static final String TOKEN_FORMAT_V1 = "v1";
+    public static final String TOKEN_FORMAT_V2 = "v2";
+
+    /**
+     * Claim with roles bitmap in v2 tokens, see {@link SecurityRoleTable}
+     */
+    public static final String CLAIM_ROLES = "r";
+
+    /**
+     * Claim with time (seconds) of original login, carried forward to refreshed tokens
+     */
+    public static final String CLAIM_LOGIN = "lat";
 
     @Autowired
     ApplicationEventPublisher eventPublisher;
     
     @Autowired
     Environment env;
+
+    @Autowired
+    SecurityTokenCache tokenCache;
+
+    @Autowired
+    SecurityKeyring keyring;
+
+    @Autowired
+    SecurityRoleTable roleTable;
+
+    @Autowired
+    SecurityRevocationList revocations;
+
+    @Autowired
+    SecurityTokenMinter minter;
+
+    @Autowired
+    SecurityApiKeys apiKeys;
+
+    /**
+     * Time source for token refresh decisions
+     */
+    Clock clock = Clock.systemUTC();
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
     
     @EventListener
     public void onApplicationReady(ApplicationReadyEvent ev) {
@@ -116,30 +162,76 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
     }
 
     /**
-     * Creates JWT token for specified authentication.
+     * Creates JWT token for specified authentication, signed with current {@link SecurityKeyring} key.
+     * Format is selected by jwt.format property.
      */
-    public String createToken(String secretKey, Authentication auth, long timeout) {
-        SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.HS256;
-        Date now = new Date();
-        StringBuilder roles = new StringBuilder();
-        for (GrantedAuthority a: auth.getAuthorities()) {
-            if (roles.length() > 0) {
-                roles.append(", ");
-            }
-            roles.append(a.getAuthority());
+    public String createToken(Authentication auth, long timeout) {
+        return createToken(auth, timeout, env.getProperty("jwt.format", TOKEN_FORMAT_V1));
+    }
+
+    /**
+     * Creates JWT token in specified format, see {@link SecurityTokenMinter}.
+     */
+    public String createToken(Authentication auth, long timeout, String format) {
+        // Refreshed token keeps original login time
+        long loginAt = auth instanceof TokenAuthentication ? ((TokenAuthentication) auth).getLoginAt() : 0;
+        return minter.mint(auth.getName(), auth.getAuthorities(), timeout, format, loginAt);
+    }
+
+    /**
+     * Token lifetime (ms) with random jitter, so tokens issued at the same time don`t expire at once.
+     */
+    public long tokenTimeout() {
+        long timeout = env.getProperty("server.session.timeout", Integer.class, 7200) * 1000L;
+        double jitter = env.getProperty("jwt.expiry.jitter", Double.class, 0.1);
+        if (jitter > 0) {
+            timeout -= (long) (timeout * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return timeout;
+    }
+
+    /**
+     * Creates new token and sends it as header and, if required, as cookie.
+     */
+    public String issueToken(HttpServletResponse response, Authentication auth, boolean cookie) {
+        long timeout = tokenTimeout();
+        if (auth instanceof TokenAuthentication) {
+            // Refreshed token never outlives jwt.refresh.max-age
+            timeout = Math.min(timeout, loginAgeLeft((TokenAuthentication) auth));
         }
-        byte[] apiKeySecretBytes = secretKey.getBytes(Charset.forName("ISO-8859-1"));
-        SecretKeySpec signingKey = new SecretKeySpec(apiKeySecretBytes, signatureAlgorithm.getJcaName());
-        JwtBuilder builder = Jwts.builder().setId(UUID.randomUUID().toString())
-                .setIssuedAt(now)
-                .setSubject(auth.getName())
-                .setAudience(roles.toString())
-                .signWith(signatureAlgorithm, signingKey)
-                .compressWith(new GzipCompressionCodec());
-        long exp = System.currentTimeMillis() + timeout;
-		builder.setExpiration(new Date(exp));
-        String jwt = builder.compact();
-        return jwt + ":" + exp;
+        String token = createToken(auth, timeout);
+        log.info("Setting user {} auth token {}", auth.getName(), token);
+        response.setHeader(HEADER_AUTH, token);
+        if (cookie) {
+            Cookie ck = new Cookie(COOKIE_AUTH, token);
+            ck.setPath("/");
+            response.addCookie(ck);
+        }
+        return token;
+    }
+
+    /**
+     * True if token passed jwt.refresh.fraction of its lifetime and should be replaced.
+     * Not refreshed after jwt.refresh.max-age since original login, user has to login again.
+     */
+    public boolean requiresRefresh(TokenAuthentication auth) {
+        double fraction = env.getProperty("jwt.refresh.fraction", Double.class, 0.5);
+        if (fraction <= 0 || auth.getIssuedAt() == 0 || auth.getExpiresAt() == 0 || loginAgeLeft(auth) <= 0) {
+            return false;
+        }
+        long lifetime = auth.getExpiresAt() - auth.getIssuedAt();
+        return clock.millis() - auth.getIssuedAt() > lifetime * fraction;
+    }
+
+    /**
+     * Ms left till jwt.refresh.max-age since original login, Long.MAX_VALUE if not limited
+     */
+    long loginAgeLeft(TokenAuthentication auth) {
+        long maxAge = env.getProperty("jwt.refresh.max-age", Long.class, 0L);
+        if (maxAge <= 0 || auth.getLoginAt() == 0) {
+            return Long.MAX_VALUE;
+        }
+        return auth.getLoginAt() + maxAge - clock.millis();
     }
 
     /**
@@ -149,29 +241,101 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
 		private static final long serialVersionUID = 1L;
 
 		/**
-    	 * TTL (ms)
+    	 * Expiration timestamp (ms), 0 if token never expires
     	 */
-    	private final long expiration;
+    	private final long expiresAt;
 
     	/**
     	 * JWT token
     	 */
     	private final String token;
 
+    	private final AuthoritySet authorities;
+
+    	/**
+    	 * Issue timestamp (ms), 0 if unknown
+    	 */
+    	private final long issuedAt;
+
+    	/**
+    	 * Token id (jti)
+    	 */
+    	private final String id;
+
+    	/**
+    	 * Original login timestamp (ms), 0 if unknown
+    	 */
+    	private final long loginAt;
+
 		public TokenAuthentication(String login, Collection<? extends GrantedAuthority> authorities, long expiration, String token) {
-			super(login, login, null, authorities, null);
-			this.expiration = expiration;
+			this(login, authorities, expiration, token, 0, null);
+		}
+
+		public TokenAuthentication(String login, Collection<? extends GrantedAuthority> authorities, long expiration, String token, long issuedAt, String id) {
+			this(login, authorities, expiration, token, issuedAt, id, issuedAt);
+		}
+
+		public TokenAuthentication(String login, Collection<? extends GrantedAuthority> authorities, long expiration, String token, long issuedAt, String id, long loginAt) {
+			// Authorities are kept as AuthoritySet, not copied by super
+			super(login, login, null, null, null);
+			this.authorities = AuthoritySet.of(authorities);
+			this.expiresAt = expiration != 0 ? System.currentTimeMillis() + expiration : 0;
 			this.token = token;
+			this.issuedAt = issuedAt;
+			this.id = id;
+			this.loginAt = loginAt;
 		}
 
+		/**
+		 * TTL (ms)
+		 */
 		public long getExpiration() {
-			return expiration;
+			return expiresAt != 0 ? expiresAt - System.currentTimeMillis() : 0;
+		}
+
+		public long getExpiresAt() {
+			return expiresAt;
+		}
+
+		public long getIssuedAt() {
+			return issuedAt;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public long getLoginAt() {
+			return loginAt;
 		}
 
 		public String getToken() {
 			return token;
 		}
 
+		@Override
+		public Collection<GrantedAuthority> getAuthorities() {
+			return authorities;
+		}
+
+		/**
+		 * Same instance is shared by {@link SecurityTokenCache} between all requests with this token.
+		 */
+		@Override
+		public void setAuthenticated(boolean authenticated) {
+			// Called once by RunAsUserToken constructor, before own fields are assigned
+			if (authorities == null) {
+				super.setAuthenticated(authenticated);
+				return;
+			}
+			throw new IllegalArgumentException("Token authentication is immutable");
+		}
+
+		@Override
+		public void setDetails(Object details) {
+			throw new IllegalArgumentException("Token authentication is immutable");
+		}
+
 		public void auth(HttpHeaders headers) {
 			headers.add(HEADER_AUTH, token);
 		}
@@ -182,37 +346,51 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
     }
 
     /**
-     * Reconstructs auth from token
+     * Reconstructs auth from token, reusing previously verified tokens from {@link SecurityTokenCache}.
+     * Accepts both v1 and v2 token formats. Rejects tokens revoked by {@link SecurityRevocationList}.
      */
-    public Authentication restoreToken(String secretKey, String jwt) {
+    public Authentication restoreToken(String jwt) {
+        TokenAuthentication cached = tokenCache.get(jwt);
+        if (cached != null) {
+            if (revocations.isRevoked(cached.getId())) {
+                throw new JwtException("Token revoked: " + cached.getId());
+            }
+            return cached;
+        }
+
     	String tok = jwt;
     	// Strip expiration
     	if (tok.indexOf(":") > 0) {
     		tok = tok.substring(0, tok.indexOf(":"));
     	}
-        Claims token = (Claims) Jwts.parser()
-            .setAllowedClockSkewSeconds(5)
-            .setSigningKey(secretKey.getBytes(Charset.forName("ISO-8859-1")))
-            .parse(tok).getBody();
+        Claims token = keyring.parser().parseClaimsJws(tok).getBody();
+        if (revocations.isRevoked(token.getId())) {
+            throw new JwtException("Token revoked: " + token.getId());
+        }
         long exp = token.getExpiration() != null ? (token.getExpiration().getTime() - System.currentTimeMillis()) : 0;
-		log.info("Auth token subject {} expiration in {} ms", token.getSubject(), exp);
-        List<GrantedAuthority> authorities = new ArrayList<>();
+		log.debug("Auth token subject {} expiration in {} ms", token.getSubject(), exp);
+        AuthoritySet.Builder authorities = new AuthoritySet.Builder();
+        Object bits = token.get(CLAIM_ROLES);
+        if (bits instanceof Number) {
+            roleTable.decode(((Number) bits).longValue(), authorities);
+        }
         String roles = token.getAudience();
-        for (StringTokenizer tk = new StringTokenizer(roles, ", "); tk.hasMoreTokens();) {
-            String role = tk.nextToken().trim();
-            // Don`t add password role
-            if (!role.equals(ROLE_AUTH_PASSWORD)) {
-                authorities.add(new SimpleGrantedAuthority(role));
+        if (roles != null) {
+            for (StringTokenizer tk = new StringTokenizer(roles, ", "); tk.hasMoreTokens();) {
+                authorities.add(tk.nextToken().trim());
             }
         }
 
-        // Add token role
-        SimpleGrantedAuthority authToken = new SimpleGrantedAuthority(ROLE_AUTH_TOKEN);
-        if (!authorities.contains(authToken)) {
-        	authorities.add(authToken);
-        }
+        // Don`t add password role, add token role
+        authorities.remove(ROLE_AUTH_PASSWORD);
+        authorities.add(ROLE_AUTH_TOKEN);
 
-        RunAsUserToken auth = new TokenAuthentication(token.getSubject(), authorities, exp, jwt);
+        long iat = token.getIssuedAt() != null ? token.getIssuedAt().getTime() : 0;
+        // Tokens issued before login claim was introduced count from issue time
+        Object login = token.get(CLAIM_LOGIN);
+        long loginAt = login instanceof Number ? ((Number) login).longValue() * 1000 : iat;
+        TokenAuthentication auth = new TokenAuthentication(token.getSubject(), authorities.build(), exp, jwt, iat, token.getId(), loginAt);
+        tokenCache.put(jwt, auth);
         return auth;
     }
 
@@ -222,8 +400,6 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
     @Bean
     @ConditionalOnProperty({ "jwt.password", "JWT_PASSWORD" })
     public FilterRegistrationBean createTokenUpdate() {
-        String encryptionPassword = env.getProperty("JWT_PASSWORD", env.getProperty("jwt.password"));
-
         Filter f = new Filter() {
             Logger log = LoggerFactory.getLogger(getClass());
 
@@ -236,50 +412,17 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
                 Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
                 if (auth != null && !(auth instanceof AnonymousAuthenticationToken) && response != null) {
-                	SimpleGrantedAuthority authToken = new SimpleGrantedAuthority(ROLE_AUTH_TOKEN);
-                	if (auth.getAuthorities().contains(authToken)) {
+                	if (auth.getAuthorities().contains(AuthorityRegistry.ROLE_AUTH_TOKEN)) {
                 		// Don`t create token for Token auth
                 	} else {
-	                	String cookieToken = null;
-	                	Cookie[] cl = request.getCookies();
-	                	if (cl != null) {
-	                		for (Cookie ck: cl) {
-	                			if (ck.getName().equals(COOKIE_AUTH)) {
-	                				cookieToken  = ck.getValue();
-	                				break;
-	                			}
-	                		}
+	                	TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+	                	if (tok != null && tok.isExpired()) {
+	                		log.trace("Token is in the past: {}", tok.getExpiration());
 	                	}
 
-	                	String headerToken = request.getHeader(HEADER_AUTH);
-
-	                	boolean tokenExpired = false;
-	                	if (headerToken != null && headerToken.indexOf(":") > 0) {
-							long exp = Long.parseLong(headerToken.substring(headerToken.indexOf(":") + 1));
-							long now = System.currentTimeMillis();
-							if (exp < now) {
-								log.trace("Token is in the past: {} <> {}", exp, now);
-								tokenExpired = true;
-							}
-						}
-
-	                	if (cookieToken != null && cookieToken.indexOf(":") > 0) {
-							long exp = Long.parseLong(cookieToken.substring(cookieToken.indexOf(":") + 1));
-							long now = System.currentTimeMillis();
-							if (exp < now) {
-								log.trace("Token is in the past: {} <> {}", exp, now);
-								tokenExpired = true;
-							}
-						}
-
 	                	// Only recreate cookie if there is no cookie
-	                	if ((headerToken == null && cookieToken == null) || tokenExpired) {
-		                	String token = createToken(encryptionPassword, auth, env.getProperty("server.session.timeout", Integer.class, 7200) * 1000);
-		                    log.info("Setting user {} auth token {}", auth.getName(), token);
-		                    response.setHeader(HEADER_AUTH, token);
-		                    Cookie ck = new Cookie(COOKIE_AUTH, token);
-		                    ck.setPath("/");
-		                    response.addCookie(ck);
+	                	if (tok == null || tok.isExpired()) {
+		                	issueToken(response, auth, true);
 	                	}
                 	}
                 }
@@ -303,39 +446,21 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
      * Must be in HttpSecurity add addFilterBefore UsernamePasswordAuthentication.
      */
     public AbstractAuthenticationProcessingFilter createTokenAuthFilter(ApplicationEventPublisher eventPublisher) {
-        String encryptionPassword = env.getProperty("JWT_PASSWORD", env.getProperty("jwt.password"));
-
         AbstractAuthenticationProcessingFilter f = new AbstractAuthenticationProcessingFilter(new AntPathRequestMatcher("/**")) {
             @Override
             protected boolean requiresAuthentication(HttpServletRequest request, HttpServletResponse response) {
             	Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-                if ((auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken) && encryptionPassword != null && super.requiresAuthentication(request, response)) {
-                    String tok = request.getHeader(HEADER_AUTH);
-					if (tok == null) {
-                        Cookie[] ckl = request.getCookies();
-                        if (ckl != null) {
-	                        for (Cookie ck: ckl) {
-	                            if (ck.getName().equals(COOKIE_AUTH)) {
-	                            	tok = ck.getValue();
-	                            	break;
-	                            }
-	                        }
-                        }
-                    }
-
+                if ((auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken) && keyring.isEnabled() && super.requiresAuthentication(request, response)) {
+                    TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
 					if (tok != null) {
 						// Don`t accept expired tokens
-						if (tok.indexOf(":") > 0) {
-							long exp = Long.parseLong(tok.substring(tok.indexOf(":") + 1));
-							long now = System.currentTimeMillis();
-							if (exp < now) {
-								log.trace("Token is in the past: {} <> {}", exp, now);
-			                    Cookie ck = new Cookie(COOKIE_AUTH, "");
-			                    ck.setPath("/");
-			                    ck.setMaxAge(0);
-			                    response.addCookie(ck);
-								return false;
-							}
+						if (tok.isExpired()) {
+							log.trace("Token is in the past: {}", tok.getExpiration());
+		                    Cookie ck = new Cookie(COOKIE_AUTH, "");
+		                    ck.setPath("/");
+		                    ck.setMaxAge(0);
+		                    response.addCookie(ck);
+							return false;
 						}
 
 						return true;
@@ -352,26 +477,14 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
                     throw new NullPointerException("ctx");
                 }
 
-                String jwt = request.getHeader(HEADER_AUTH);
-                boolean cookie = false;
-
-                if (jwt == null) {
-                    Cookie[] ckl = request.getCookies();
-                    if (ckl != null) {
-	                    for (Cookie ck: ckl) {
-	                        if (ck.getName().equals(COOKIE_AUTH)) {
-	                            jwt = ck.getValue();
-	                            cookie = true;
-	                            break;
-	                        }
-	                    }
-                    }
-                }
+                TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+                String jwt = tok != null ? tok.getToken() : null;
+                boolean cookie = tok != null && tok.isCookie();
 
                 log.info("Attempting token auth {} existing auth {}", jwt, ctx.getAuthentication());
                 if (jwt != null) {
                     try {
-                        Authentication auth = restoreToken(encryptionPassword, jwt);
+                        Authentication auth = restoreToken(jwt);
                         log.info("Successfull token auth {}", auth.getName());
                         return auth;
                     } catch (ExpiredJwtException e) {
@@ -422,6 +535,55 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         return f;
     }
 
+    /**
+     * Sliding refresh, replaces token before it expires, whether authentication was restored from token
+     * or from HttpSession. Refreshed token replaces authentication in context, so session keeps it too.
+     * Must be in HttpSecurity after authentication filters.
+     */
+    public Filter createTokenRefreshFilter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+                Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+                if (auth instanceof TokenAuthentication && requiresRefresh((TokenAuthentication) auth)) {
+                    TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+                    // Browser relying on session only gets it as cookie
+                    String token = issueToken(response, auth, tok == null || tok.isCookie());
+                    SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+                    ctx.setAuthentication(restoreToken(token));
+                    SecurityContextHolder.setContext(ctx);
+                }
+                chain.doFilter(request, response);
+            }
+        };
+    }
+
+    /**
+     * Authenticates machine clients by X-API-Key header, unknown keys are rejected with 401.
+     * Must be in HttpSecurity add addFilterBefore UsernamePasswordAuthentication.
+     */
+    public Filter createApiKeyAuthFilter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+                String key = request.getHeader(HEADER_API_KEY);
+                if (key != null) {
+                    Authentication auth = apiKeys.lookup(key);
+                    if (auth == null) {
+                        log.info("Invalid API key from {}", request.getRemoteAddr());
+                        response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid API key");
+                        return;
+                    }
+                    // New context, never stored in session, see StatelessSecurityContextRepository
+                    SecurityContext ctx = SecurityContextHolder.createEmptyContext();
+                    ctx.setAuthentication(auth);
+                    SecurityContextHolder.setContext(ctx);
+                }
+                chain.doFilter(request, response);
+            }
+        };
+    }
+
     public AuthenticationManager getAuthenticationManager() {
         try {
             AuthenticationManager b = authenticationManagerBean();
@@ -442,6 +604,8 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
 	@Override
 	protected void configure(HttpSecurity http) throws Exception {
 	    http.csrf().disable();
+	    // Authority checks against AuthoritySet, without per request copy
+	    http.authorizeRequests().expressionHandler(new AuthoritySetExpressionHandler());
 
 	    boolean insecure = env.getProperty("security.insecure", Boolean.class, false);
         if (insecure) {
@@ -473,6 +637,10 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
             // API access
             http.authorizeRequests().antMatchers("/api/**").hasAnyAuthority("ROLE_USER");
             
+            // Token introspection for gateways
+            String[] introspectRoles = StringUtils.tokenizeToStringArray(env.getProperty("security.introspect.roles", ROLE_AUTH_APIKEY + ",ROLE_ADMIN"), ", ");
+            http.authorizeRequests().antMatchers(HttpMethod.POST, "/auth/introspect").hasAnyAuthority(introspectRoles);
+
             // Auth flexible endpoint
             http.authorizeRequests().antMatchers("/auth/**").permitAll();
 
@@ -499,7 +667,21 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
 
         http.formLogin().loginProcessingUrl("/auth/authenticate");
         http.formLogin().defaultSuccessUrl("/auth/success", true);
+        http.addFilterBefore(createApiKeyAuthFilter(), UsernamePasswordAuthenticationFilter.class);
         http.addFilterBefore(createTokenAuthFilter(eventPublisher), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(createTokenRefreshFilter(), UsernamePasswordAuthenticationFilter.class);
+
+        // API key requests never create nor read HttpSession, token authenticated API requests too if security.api.stateless
+        boolean statelessApi = env.getProperty("security.api.stateless", Boolean.class, true);
+        RequestMatcher api = new AntPathRequestMatcher("/api/**");
+        http.securityContext().securityContextRepository(new StatelessSecurityContextRepository(statelessApi ? api : request -> false,
+            new HttpSessionSecurityContextRepository(), this::isAccepted));
+        if (statelessApi) {
+            HttpSessionRequestCache requestCache = new HttpSessionRequestCache();
+            requestCache.setRequestMatcher(new NegatedRequestMatcher(api));
+            http.requestCache().requestCache(requestCache);
+        }
+
         http.logout()
         	.logoutUrl("/auth/logout")
         	.logoutSuccessUrl(env.getProperty("forward.logout.finish", "/auth/"))
@@ -508,24 +690,123 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         	.addLogoutHandler(new LogoutHandler() {				
 				@Override
 				public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
-					// Remove any cookies, if required
+					// Revoke current token everywhere, cookie is removed by deleteCookies()
+					TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+					if (tok != null && keyring.isEnabled()) {
+						try {
+							Authentication auth = authentication instanceof TokenAuthentication ? authentication : restoreToken(tok.getToken());
+							TokenAuthentication ta = (TokenAuthentication) auth;
+							if (ta.getId() != null) {
+								revocations.revoke(ta.getId(), ta.getExpiresAt());
+							}
+						} catch (JwtException e) {
+							log.trace("Not revoking invalid token: {}", e.getMessage());
+						}
+					}
 				}
 			});
 	}
 
     /**
-     * Provides {@link HttpServletRequest} instance as {@link Authentication#getDetails()}
+     * True if token would be accepted by token auth filter, result is cached so it is verified once per request.
+     */
+    boolean isAccepted(TokenResolver.ResolvedToken tok) {
+        if (tok.isExpired() || !keyring.isEnabled()) {
+            return false;
+        }
+        try {
+            restoreToken(tok.getToken());
+            return true;
+        } catch (JwtException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Skips HttpSession for API key requests and requests matching stateless paths with accepted token,
+     * delegates everything else (i.e. form login for browser UI). Request with rejected token uses session as usual.
+     */
+    public static class StatelessSecurityContextRepository implements SecurityContextRepository {
+        static final String STATELESS = StatelessSecurityContextRepository.class.getName() + ".STATELESS";
+
+        private final RequestMatcher stateless;
+        private final SecurityContextRepository delegate;
+        private final Predicate<TokenResolver.ResolvedToken> accepted;
+
+        public StatelessSecurityContextRepository(RequestMatcher stateless, SecurityContextRepository delegate, Predicate<TokenResolver.ResolvedToken> accepted) {
+            this.stateless = stateless;
+            this.delegate = delegate;
+            this.accepted = accepted;
+        }
+
+        /**
+         * Decided once on load, so context is saved to the same repository it was loaded from
+         */
+        protected boolean isStateless(HttpServletRequest request) {
+            Boolean b = (Boolean) request.getAttribute(STATELESS);
+            if (b == null) {
+                b = request.getHeader(HEADER_API_KEY) != null;
+                if (!b && stateless.matches(request)) {
+                    TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+                    b = tok != null && accepted.test(tok);
+                }
+                request.setAttribute(STATELESS, b);
+            }
+            return b;
+        }
+
+        @Override
+        public SecurityContext loadContext(HttpRequestResponseHolder holder) {
+            if (isStateless(holder.getRequest())) {
+                return SecurityContextHolder.createEmptyContext();
+            }
+            return delegate.loadContext(holder);
+        }
+
+        @Override
+        public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+            if (!isStateless(request)) {
+                delegate.saveContext(context, request, response);
+            }
+        }
+
+        @Override
+        public boolean containsContext(HttpServletRequest request) {
+            return !isStateless(request) && delegate.containsContext(request);
+        }
+    }
+
+    /**
+     * Provides snapshot of request details as {@link Authentication#getDetails()}.
+     * Don`t keep reference to request itself, details live as long as session.
      */
 	public static class ExtendedWebAuthenticationDetails extends WebAuthenticationDetails {
-        HttpServletRequest request;
+		private static final long serialVersionUID = 1L;
+
+		private final String realIp;
+		private final String userAgent;
+		private final String traceId;
 
 	    public ExtendedWebAuthenticationDetails(HttpServletRequest request) {
             super(request);
-            this.request = request;
+            this.realIp = request.getHeader("X-Real-IP");
+            this.userAgent = request.getHeader("User-Agent");
+            this.traceId = request.getHeader("X-Trace-ID");
+        }
+
+        /**
+         * Client address as reported by proxy, or null
+         */
+        public String getRealIp() {
+            return realIp;
+        }
+
+        public String getUserAgent() {
+            return userAgent;
         }
 
-        public HttpServletRequest getRequest() {
-            return request;
+        public String getTraceId() {
+            return traceId;
         }
     }
 
@@ -1,11 +1,9 @@
 package com.github.huksley.app.system;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
 import java.security.Principal;
+import java.util.regex.Pattern;
 
-import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -21,10 +19,14 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 
@@ -49,6 +51,42 @@ public class SecurityEndpointController {
     @Autowired
     Environment env;
 
+    @Autowired
+    SecurityTemplates templates;
+
+    /**
+     * Values are written as consecutive root level values, without separator.
+     */
+    static final JsonFactory JSON = new JsonFactory()
+        .setRootValueSeparator(null)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    static final Pattern JS_IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+
+    static final SerializableString AMD_START = new SerializedString("(function (name, func) { if (window.define) { define(name, [], func); } else { window[name] = func(); } })('auth', function () { return ");
+    static final SerializableString AMD_END = new SerializedString("});");
+    static final SerializableString VAR_START = new SerializedString("var ");
+    static final SerializableString VAR_ASSIGN = new SerializedString(" = ");
+    static final SerializableString OPEN = new SerializedString("{\n");
+    static final SerializableString NEXT = new SerializedString(",\n");
+    static final SerializableString CLOSE = new SerializedString(" \n}");
+    static final SerializableString TYPE = new SerializedString("\"type\": ");
+    static final SerializableString LOGIN = new SerializedString("\"login\": ");
+    static final SerializableString ROLES_START = new SerializedString("\"roles\": [ ");
+    static final SerializableString ROLES_NEXT = new SerializedString(", ");
+    static final SerializableString ROLES_END = new SerializedString(" ],\n");
+    static final SerializableString ERROR = new SerializedString("\"error\": ");
+    static final SerializableString ERROR_NULL = new SerializedString("\"error\": null,\n");
+    static final SerializableString ERROR_TYPE = new SerializedString("\"errorType\": ");
+    static final SerializableString ERROR_EXCEPTION = new SerializedString("\"errorException\": ");
+    static final SerializableString REMOTE_IP = new SerializedString("\"remoteIp\": ");
+    static final SerializableString REAL_IP = new SerializedString("\"realIp\": ");
+    static final SerializableString REAL_IP_NULL = new SerializedString("\"realIp\": null,\n");
+    static final SerializableString USER_AGENT = new SerializedString("\"userAgent\": ");
+    static final SerializableString TOKEN = new SerializedString("\"token\": ");
+    static final SerializableString TOKEN_NULL = new SerializedString("\"token\": null,\n");
+    static final SerializableString TIMESTAMP = new SerializedString("\"_timestamp\": ");
+
     @ApiOperation("Handles auth requests")
     @RequestMapping(path = "/auth/**", method = { RequestMethod.GET, RequestMethod.POST })
     public void auth(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -57,17 +95,8 @@ public class SecurityEndpointController {
         String authType = env.getProperty("security.auth.type", "test");
 
         // Obtain current request token
-        String token = request.getHeader(SecurityConfigurer.HEADER_AUTH);
-        if (token == null) {
-            Cookie[] cookies = request.getCookies();
-            if (cookies != null) {
-                for (Cookie ck: cookies) {
-                    if (ck.getName().equals(SecurityConfigurer.COOKIE_AUTH)) {
-                        token = ck.getValue();
-                    }
-                }
-            }
-        }
+        TokenResolver.ResolvedToken resolved = TokenResolver.resolve(request);
+        String token = resolved != null ? resolved.getToken() : null;
 
         MDC.def().log(log).trace("Serving auth endpoint {}, auth {}, provider {} manager {}", request.getServletPath(), auth, provider, manager, token);
         response.addHeader("Cache-Control", "no-cache");
@@ -75,7 +104,6 @@ public class SecurityEndpointController {
         response.setCharacterEncoding("UTF-8");
         response.setContentType("text/html");
 
-        PrintWriter out = response.getWriter();
         String what = request.getPathInfo();
         if (what == null || what.equals("")) {
             what = request.getServletPath();
@@ -99,119 +127,17 @@ public class SecurityEndpointController {
         	}
         } else
         if (what != null && (what.equals("info") || (!acceptsForm && what.equals("success")))) {
-            String s = "";
-            boolean var = false;
-            boolean amd = Boolean.parseBoolean(request.getParameter("amd"));
-            if (amd) {
-            	s += "(function (name, func) { if (window.define) { define(name, [], func); } else { window[name] = func(); } })('auth', function () { return ";
-            } else
-            if (request.getParameter("var") != null) {
-            	s += "var " + request.getParameter("var") + " = ";
-            	var = true;
-            }
-            s += "{\n";
-            s += "\"type\": \"" + authType + "\",\n";
-            
-            if (auth != null) {
-                s += "\"login\": \"" + auth.getName() + "\",\n";
-                s += "\"type\": \"" + auth.getClass().getSimpleName() + "\",\n";
-                if (auth instanceof Authentication) {
-                    Authentication a = (Authentication) auth;
-                    String l = "";
-                    for (GrantedAuthority aa: a.getAuthorities()) {
-                        if (!l.equals("")) {
-                            l += ", ";
-                        }
-                        l += "\"" + aa.getAuthority() + "\"";
-                    }
-                    s += "\"roles\": [ " + l + " ],\n";
-                } else {
-                    s += "\"roles\": [],\n";
-                }
-            }
-            
-            // https://stackoverflow.com/questions/13261794/display-error-messages-in-spring-login
-            HttpSession session = request.getSession(false);
-            if (session != null) {
-                Throwable last = (Throwable) session.getAttribute("SPRING_SECURITY_LAST_EXCEPTION");
-                if (last != null) {
-                    s += "\"error\": \"" + (last.getMessage() != null ? last.getMessage() : last.toString()) + "\",\n";
-                } else {
-                    s += "\"error\": null,\n";
-                }
-
-                if (last != null) {
-                    s += "\"errorType\": \"" + last.getClass().getSimpleName().replace("Exception", "") + "\",\n";
-                }
-
-                // FIXME: insecure
-                Throwable cause = last != null && last.getCause() != null ? last.getCause() : last;
-                if (cause != null) {
-                    s += "\"errorException\": \"" + cause.toString() +  "\",\n";
-                }
-            }
-
-            s += "\"remoteIp\": \"" + request.getRemoteAddr() + "\",\n";
-
-            if (request.getHeader("X-Real-IP") != null) {
-                s += "\"realIp\": \"" + request.getHeader("X-Real-IP") + "\",\n";
-            } else {
-                s += "\"realIp\": null,\n";
-            }
-
-            s += "\"userAgent\": \"" + request.getHeader("User-Agent") + "\",\n";
-
-            if (token != null) {
-                s += "\"token\": \"" + token + "\",\n";
-            } else {
-                s += "\"token\": null,\n";
-            }
-
-            s += "\"_timestamp\": " + System.currentTimeMillis();
-            s += " \n}";
-            if (amd) {
-            	s += "});";
-            }
-            if (var || amd) {
-            	response.setContentType("application/javascript");
-            } else {
-            	response.setContentType("application/json");
-            }
-            out.write(s);
+            writeInfo(request, response, auth, authType, token);
         } else
         if (acceptsForm && what != null && what.equals("success")) {
             response.sendRedirect(env.getProperty("forward.login.success", "/auth/"));
         } else
         if (what != null && what.equals("css")) {
-            String s = null;
-            try (InputStream is = getClass().getResourceAsStream("/static/auth/template.css")) {
-                s = new String(StreamUtils.copyToByteArray(is), "UTF-8");
-            }
-            
-            s += "\n\n.authtype_" + authType + " {\n"
-                    +
-                    "    display: block;\n" +
-                    "}";
-            
-            if (auth != null) {
-                for (GrantedAuthority aa : auth.getAuthorities()) {
-                    s += "\n\n.role_" + aa.getAuthority().replace("ROLE_", "") + " {\n" +
-                            "    display: block;\n" +
-                            "}";
-                }
-            }
-
-            response.setContentType("text/css");
-            out.write(s);
+            templates.serve(templates.css(auth != null ? auth.getAuthorities() : null), request, response);
         } else
         if (acceptsForm && what == null) {
             if (auth != null) {
-                String s = null;
-            	try (InputStream is = getClass().getResourceAsStream("/static/auth/user.html")) {
-                	s = new String(StreamUtils.copyToByteArray(is), "UTF-8");
-                }
-                s = s.replace("<title>", "<BASE HREF=\"/auth/forms/user.html\"><title>");
-                out.write(s);
+                templates.serve(templates.get(SecurityTemplates.USER), request, response);
             } else {
                 response.sendRedirect("/auth/login");
             }
@@ -223,12 +149,7 @@ public class SecurityEndpointController {
             response.flushBuffer();
         } else
         if (acceptsForm && what.equals("login")) {
-            String s = null;
-        	try (InputStream is = getClass().getResourceAsStream("/static/auth/login.html")) {
-        		s = new String(StreamUtils.copyToByteArray(is), "UTF-8");
-        	}
-        	s = s.replace("<title>", "<BASE HREF=\"/auth/login.html\"><title>");
-            out.write(s);
+            templates.serve(templates.get(SecurityTemplates.LOGIN), request, response);
         } else
         if (acceptsForm && what.equals("token") && auth != null) {
             response.sendRedirect("/auth/");
@@ -245,4 +166,105 @@ public class SecurityEndpointController {
             response.flushBuffer();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes /auth/info JSON (or AMD module, or var assignment) straight to response.
+     * Layout is fixed, so keys and punctuation are pre-encoded, only values are escaped.
+     */
+    void writeInfo(HttpServletRequest request, HttpServletResponse response, Authentication auth, String authType, String token) throws IOException {
+        boolean amd = Boolean.parseBoolean(request.getParameter("amd"));
+        String var = amd ? null : request.getParameter("var");
+        if (var != null && !JS_IDENTIFIER.matcher(var).matches()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid var");
+            return;
+        }
+        response.setContentType(var != null || amd ? "application/javascript" : "application/json");
+
+        try (JsonGenerator g = JSON.createGenerator(response.getOutputStream())) {
+            if (amd) {
+                g.writeRaw(AMD_START);
+            } else
+            if (var != null) {
+                g.writeRaw(VAR_START);
+                g.writeRaw(var);
+                g.writeRaw(VAR_ASSIGN);
+            }
+            g.writeRaw(OPEN);
+            g.writeRaw(TYPE);
+            g.writeString(authType);
+            g.writeRaw(NEXT);
+
+            if (auth != null) {
+                g.writeRaw(LOGIN);
+                g.writeString(auth.getName());
+                g.writeRaw(NEXT);
+                g.writeRaw(TYPE);
+                g.writeString(auth.getClass().getSimpleName());
+                g.writeRaw(NEXT);
+                g.writeRaw(ROLES_START);
+                boolean first = true;
+                for (GrantedAuthority aa: auth.getAuthorities()) {
+                    if (!first) {
+                        g.writeRaw(ROLES_NEXT);
+                    }
+                    g.writeString(aa.getAuthority());
+                    first = false;
+                }
+                g.writeRaw(ROLES_END);
+            }
+
+            // https://stackoverflow.com/questions/13261794/display-error-messages-in-spring-login
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                Throwable last = (Throwable) session.getAttribute("SPRING_SECURITY_LAST_EXCEPTION");
+                if (last != null) {
+                    g.writeRaw(ERROR);
+                    g.writeString(last.getMessage() != null ? last.getMessage() : last.toString());
+                    g.writeRaw(NEXT);
+                    g.writeRaw(ERROR_TYPE);
+                    g.writeString(last.getClass().getSimpleName().replace("Exception", ""));
+                    g.writeRaw(NEXT);
+                    // FIXME: insecure
+                    Throwable cause = last.getCause() != null ? last.getCause() : last;
+                    g.writeRaw(ERROR_EXCEPTION);
+                    g.writeString(cause.toString());
+                    g.writeRaw(NEXT);
+                } else {
+                    g.writeRaw(ERROR_NULL);
+                }
+            }
+
+            g.writeRaw(REMOTE_IP);
+            g.writeString(request.getRemoteAddr());
+            g.writeRaw(NEXT);
+
+            String realIp = request.getHeader("X-Real-IP");
+            if (realIp != null) {
+                g.writeRaw(REAL_IP);
+                g.writeString(realIp);
+                g.writeRaw(NEXT);
+            } else {
+                g.writeRaw(REAL_IP_NULL);
+            }
+
+            g.writeRaw(USER_AGENT);
+            g.writeString(String.valueOf(request.getHeader("User-Agent")));
+            g.writeRaw(NEXT);
+
+            if (token != null) {
+                g.writeRaw(TOKEN);
+                g.writeString(token);
+                g.writeRaw(NEXT);
+            } else {
+                g.writeRaw(TOKEN_NULL);
+            }
+
+            g.writeRaw(TIMESTAMP);
+            g.writeNumber(System.currentTimeMillis());
+            g.writeRaw(CLOSE);
+            if (amd) {
+                g.writeRaw(AMD_END);
+            }
+        }
+    }
+}
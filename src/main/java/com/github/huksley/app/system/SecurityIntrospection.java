@@ -0,0 +1,229 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.jsonwebtoken.JwtException;
+
+/**
+ * Batch token introspection for gateways, served as POST /auth/introspect with { "tokens": [ ... ] }
+ * by {@link SecurityIntrospectionController}.
+ * Tokens are verified in parallel with {@link SecurityConfigurer#restoreToken(String)},
+ * results are in the same order. Cache lifetime is limited by token expiry and security.introspect.maxage,
+ * which is also how long a revoked token may still be accepted by caller caching the result.
+ * Caller must have one of security.introspect.roles (API key clients by default), see {@link SecurityConfigurer#configure}.
+ */
+@Component
+public class SecurityIntrospection {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    SecurityConfigurer security;
+
+    ThreadPoolExecutor executor;
+
+    int max;
+
+    int chunk;
+
+    long maxAge;
+
+    public static class IntrospectionRequest {
+        private List<String> tokens;
+
+        public List<String> getTokens() {
+            return tokens;
+        }
+
+        public void setTokens(List<String> tokens) {
+            this.tokens = tokens;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Result {
+        private final boolean active;
+        private final String sub;
+        private final List<String> roles;
+        private final Long exp;
+        private final long ttl;
+
+        Result(boolean active, String sub, List<String> roles, Long exp, long ttl) {
+            this.active = active;
+            this.sub = sub;
+            this.roles = roles;
+            this.exp = exp;
+            this.ttl = ttl;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public String getSub() {
+            return sub;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        /**
+         * Expiry, epoch seconds
+         */
+        public Long getExp() {
+            return exp;
+        }
+
+        /**
+         * Seconds this result can be cached
+         */
+        public long getTtl() {
+            return ttl;
+        }
+    }
+
+    public static class IntrospectionResponse {
+        private final List<Result> results;
+
+        IntrospectionResponse(List<Result> results) {
+            this.results = results;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = env.getProperty("security.introspect.threads", Integer.class, Runtime.getRuntime().availableProcessors());
+        max = env.getProperty("security.introspect.max", Integer.class, 1000);
+        chunk = Math.max(env.getProperty("security.introspect.chunk", Integer.class, 16), 1);
+        maxAge = env.getProperty("security.introspect.maxage", Long.class, 10L);
+
+        AtomicInteger n = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 4), r -> {
+            Thread t = new Thread(r, "introspect-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        log.info("Token introspection {} threads, max {} tokens, chunk {}, max age {} s", threads, max, chunk, maxAge);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies tokens, request thread waits until all chunks are verified.
+     */
+    public ResponseEntity<IntrospectionResponse> introspect(IntrospectionRequest request) {
+        List<String> tokens = request.getTokens() != null ? request.getTokens() : Collections.emptyList();
+        if (tokens.size() > max) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+
+        Result[] results = new Result[tokens.size()];
+        verify(tokens, results);
+        long ttl = maxAge;
+        for (Result r: results) {
+            ttl = Math.min(ttl, r.ttl);
+        }
+        return ResponseEntity.ok()
+            .header("Cache-Control", "private, max-age=" + ttl)
+            .body(new IntrospectionResponse(Arrays.asList(results)));
+    }
+
+    /**
+     * Splits tokens into chunks, verifies first one in calling thread and the rest on executor.
+     * If executor is saturated, chunk is verified in calling thread too.
+     */
+    void verify(List<String> tokens, Result[] results) {
+        int parts = Math.min(executor.getMaximumPoolSize() + 1, (tokens.size() + chunk - 1) / chunk);
+        if (parts <= 1) {
+            verify(tokens, results, 0, tokens.size());
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(parts - 1);
+        for (int p = 1; p < parts; p++) {
+            int from = tokens.size() * p / parts;
+            int to = tokens.size() * (p + 1) / parts;
+            Runnable task = MDC.wrap(() -> verify(tokens, results, from, to));
+            try {
+                futures.add(executor.submit(task));
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        verify(tokens, results, 0, tokens.size() / parts);
+        for (Future<?> f: futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Token verification failed: " + e.getCause(), e.getCause());
+            }
+        }
+    }
+
+    void verify(List<String> tokens, Result[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = verify(tokens.get(i));
+        }
+    }
+
+    Result verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return new Result(false, null, null, null, maxAge);
+        }
+        try {
+            Authentication auth = security.restoreToken(token);
+            long expiresAt = auth instanceof SecurityConfigurer.TokenAuthentication ? ((SecurityConfigurer.TokenAuthentication) auth).getExpiresAt() : 0;
+            long ttl = maxAge;
+            if (expiresAt != 0) {
+                ttl = Math.max(Math.min(ttl, (expiresAt - System.currentTimeMillis()) / 1000), 0);
+            }
+            List<String> l = new ArrayList<>(auth.getAuthorities().size());
+            for (GrantedAuthority a: auth.getAuthorities()) {
+                l.add(a.getAuthority());
+            }
+            return new Result(true, auth.getName(), l, expiresAt != 0 ? expiresAt / 1000 : null, ttl);
+        } catch (JwtException | IllegalArgumentException e) {
+            // Invalid, expired and revoked tokens stay inactive
+            log.trace("Inactive token: {}", e.toString());
+            return new Result(false, null, null, null, maxAge);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.huksley.app.system;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+/**
+ * Batch token introspection, request thread waits for verification.
+ */
+@RestController
+@Api(description = "Batch token introspection.")
+public class SecurityIntrospectionController {
+    @Autowired
+    SecurityIntrospection introspection;
+
+    @ApiOperation("Verifies tokens, returns active flag, subject, roles and expiry for each")
+    @PostMapping("/auth/introspect")
+    public ResponseEntity<SecurityIntrospection.IntrospectionResponse> introspect(@RequestBody SecurityIntrospection.IntrospectionRequest request) {
+        return introspection.introspect(request);
+    }
+}
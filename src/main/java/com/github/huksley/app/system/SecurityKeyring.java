@@ -0,0 +1,199 @@
+package com.github.huksley.app.system;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.Key;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+
+/**
+ * Holds ready-made JWT signing keys indexed by <code>kid</code> header and reusable per-thread parsers.
+ *
+ * <pre>
+ * jwt.password.file - file with current signing secret, read on every reload (i.e. mounted secret)
+ * JWT_PASSWORD or jwt.password - current signing secret, if there is no jwt.password.file
+ * jwt.kid - key id of current secret, tokens signed with "default" key have no kid header
+ * jwt.keys - additional verification only keys, kid:secret,kid2:secret2
+ * </pre>
+ *
+ * Keys are reloaded periodically, so secret can be rotated with overlapping validity by moving
+ * current secret to jwt.keys before changing it. Only values which change at runtime are picked up:
+ * jwt.password.file contents or properties from refreshed property source. JWT_PASSWORD set as
+ * environment variable or system property is fixed at startup, changing it requires restart.
+ */
+@Component
+public class SecurityKeyring {
+    public static final SignatureAlgorithm ALGORITHM = SignatureAlgorithm.HS256;
+    public static final String DEFAULT_KID = "default";
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    SecurityTokenCache tokenCache;
+
+    /**
+     * Keys with current kid and signing key, immutable, so readers never see them from different reloads
+     */
+    public static class Keys {
+        final Map<String, Key> keys;
+        final String kid;
+        final Key signingKey;
+
+        Keys(Map<String, Key> keys, String kid) {
+            this.keys = Collections.unmodifiableMap(keys);
+            this.kid = kid;
+            this.signingKey = keys.get(kid);
+        }
+
+        public Key getSigningKey() {
+            return signingKey;
+        }
+
+        /**
+         * Key id to put in token header or null for default key.
+         */
+        public String getKeyId() {
+            return DEFAULT_KID.equals(kid) ? null : kid;
+        }
+    }
+
+    /**
+     * Replaced as a whole on reload
+     */
+    volatile Keys keys = new Keys(Collections.emptyMap(), DEFAULT_KID);
+
+    final ThreadLocal<JwtParser> parsers = ThreadLocal.withInitial(() -> Jwts.parser()
+        .setAllowedClockSkewSeconds(5)
+        .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+            @Override
+            @SuppressWarnings("rawtypes")
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                return verificationKey(header.getKeyId());
+            }
+        }));
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${jwt.keyring.reload:60000}", fixedDelayString = "${jwt.keyring.reload:60000}")
+    public void reload() {
+        String password = password();
+        String currentKid = env.getProperty("jwt.kid", DEFAULT_KID);
+        Map<String, Key> l = new LinkedHashMap<>();
+        if (password != null) {
+            l.put(currentKid, key(password));
+        }
+
+        String other = env.getProperty("jwt.keys");
+        if (other != null) {
+            for (StringTokenizer tk = new StringTokenizer(other, ","); tk.hasMoreTokens();) {
+                String s = tk.nextToken().trim();
+                int sep = s.indexOf(":");
+                if (sep <= 0) {
+                    log.warn("Invalid jwt.keys entry, expected kid:secret");
+                    continue;
+                }
+                l.putIfAbsent(s.substring(0, sep), key(s.substring(sep + 1)));
+            }
+        }
+
+        Keys old = keys;
+        if (!l.equals(old.keys) || !currentKid.equals(old.kid)) {
+            boolean retired = !l.entrySet().containsAll(old.keys.entrySet());
+            Keys k = new Keys(l, currentKid);
+            keys = k;
+            log.info("JWT keyring loaded, keys {}, signing with {}", l.keySet(), k.signingKey != null ? currentKid : null);
+            if (retired) {
+                // Don`t serve tokens signed with retired keys from cache
+                tokenCache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Current secret, from jwt.password.file if configured
+     */
+    String password() {
+        String file = env.getProperty("jwt.password.file");
+        if (file != null) {
+            try {
+                return new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8).trim();
+            } catch (IOException e) {
+                // Keep current keys, rather than dropping signing key on transient error
+                throw new IllegalStateException("Can`t read jwt.password.file " + file + ": " + e, e);
+            }
+        }
+        return env.getProperty("JWT_PASSWORD", env.getProperty("jwt.password"));
+    }
+
+    protected Key key(String secret) {
+        return new SecretKeySpec(secret.getBytes(Charset.forName("ISO-8859-1")), ALGORITHM.getJcaName());
+    }
+
+    /**
+     * True if there is a current signing key.
+     */
+    public boolean isEnabled() {
+        return keys.signingKey != null;
+    }
+
+    /**
+     * Current keys, use single snapshot for signing key and its key id.
+     */
+    public Keys getKeys() {
+        return keys;
+    }
+
+    public Key getSigningKey() {
+        return keys.signingKey;
+    }
+
+    /**
+     * Key id to put in token header or null for default key.
+     */
+    public String getKeyId() {
+        return keys.getKeyId();
+    }
+
+    /**
+     * Resolves verification key by kid header, tokens without kid use default key.
+     */
+    public Key verificationKey(String keyId) {
+        Key k = keys.keys.get(keyId != null ? keyId : DEFAULT_KID);
+        if (k == null) {
+            throw new SignatureException("Unknown JWT key id: " + keyId);
+        }
+        return k;
+    }
+
+    /**
+     * Parser for current thread, resolves keys using this keyring.
+     */
+    public JwtParser parser() {
+        return parsers.get();
+    }
+}
@@ -1,10 +1,14 @@
 package com.github.huksley.app.system;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.stereotype.Component;
@@ -21,14 +25,42 @@ public class SecurityLoginProvider implements AuthenticationProvider {
     
     @Autowired
     SecurityAuthenticator auth;
+
+    @Autowired
+    SecurityLoginThrottle throttle;
+
+    SecurityAuthenticatorAsync async;
+
+    @PostConstruct
+    public void init() {
+        if (auth.isAsync() && env.getProperty("security.auth.async", Boolean.class, true)) {
+            async = new SecurityAuthenticatorAsync(auth, env);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (async != null) {
+            async.shutdown();
+        }
+    }
 	
 	@Override
 	public Authentication authenticate(Authentication unauth) throws AuthenticationException {
-	    return auth.authenticate(this, unauth);
+	    // Reject before authenticator is called
+	    throttle.check(unauth);
+	    try {
+	        Authentication result = async != null ? async.authenticate(this, unauth) : auth.authenticate(this, unauth);
+	        throttle.success(unauth);
+	        return result;
+	    } catch (BadCredentialsException e) {
+	        throttle.failure(unauth);
+	        throw e;
+	    }
 	}
 	
 	@Override
 	public boolean supports(Class<?> authClass) {
 	    return auth.supports(authClass);
 	}
-}
\ No newline at end of file
+}
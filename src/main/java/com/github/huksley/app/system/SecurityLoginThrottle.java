@@ -0,0 +1,212 @@
+package com.github.huksley.app.system;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+import com.github.huksley.app.system.SecurityConfigurer.ExtendedWebAuthenticationDetails;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limits login attempts with token buckets per username and per client address (X-Real-IP or remote address),
+ * and rejects recently failed username/password pairs without calling authenticator.
+ * Buckets are kept in lock striped LRU maps keyed by 64 bit hash, so memory is bounded by security.login.throttle.keys.
+ */
+@Component
+public class SecurityLoginThrottle {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired(required = false)
+    MeterRegistry registry;
+
+    static final class Bucket {
+        double tokens;
+        long updated;
+    }
+
+    static final class Stripe extends LinkedHashMap<Long, Bucket> {
+        private static final long serialVersionUID = 1L;
+
+        final int max;
+
+        Stripe(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Bucket> eldest) {
+            return size() > max;
+        }
+    }
+
+    /**
+     * Bucket settings, tokens and tokens per ms.
+     */
+    static final class Limit {
+        final double burst;
+        final double rate;
+
+        Limit(double burst, double perMinute) {
+            this.burst = burst;
+            this.rate = perMinute / 60000.0;
+        }
+    }
+
+    boolean enabled;
+    Stripe[] stripes;
+    int mask;
+    Limit user;
+    Limit ip;
+    Cache<HashCode, Boolean> failed;
+    HashFunction keys;
+    HashFunction digests;
+
+    @PostConstruct
+    public void init() {
+        enabled = env.getProperty("security.login.throttle", Boolean.class, true);
+        int n = Integer.highestOneBit(Math.max(env.getProperty("security.login.throttle.stripes", Integer.class, 64), 1));
+        int max = env.getProperty("security.login.throttle.keys", Integer.class, 100000);
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe(Math.max(max / n, 1));
+        }
+        mask = n - 1;
+        user = new Limit(env.getProperty("security.login.throttle.user.burst", Double.class, 10.0), env.getProperty("security.login.throttle.user.rate", Double.class, 10.0));
+        ip = new Limit(env.getProperty("security.login.throttle.ip.burst", Double.class, 50.0), env.getProperty("security.login.throttle.ip.rate", Double.class, 60.0));
+        failed = CacheBuilder.newBuilder()
+            .maximumSize(env.getProperty("security.login.throttle.failed.size", Long.class, 10000L))
+            .expireAfterWrite(env.getProperty("security.login.throttle.failed.ttl", Long.class, 60L), TimeUnit.SECONDS)
+            .build();
+        keys = Hashing.murmur3_128();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        digests = Hashing.hmacSha256(key);
+        log.info("Login throttle {}, {} keys in {} stripes", enabled ? "enabled" : "disabled", max, n);
+    }
+
+    /**
+     * Rejects attempt or takes token from user and address buckets. Call {@link #success(Authentication)}
+     * or {@link #failure(Authentication)} afterwards.
+     */
+    public void check(Authentication unauth) throws AuthenticationException {
+        if (!enabled) {
+            return;
+        }
+        if (failed.getIfPresent(digest(unauth)) != null) {
+            count("failed");
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        String addr = address(unauth);
+        if (addr != null && !acquire("i:" + addr, ip)) {
+            count("ip");
+            throw new LoginThrottledException("Too many login attempts from " + addr);
+        }
+        if (!acquire("u:" + unauth.getName(), user)) {
+            if (addr != null) {
+                release("i:" + addr, ip);
+            }
+            count("user");
+            throw new LoginThrottledException("Too many login attempts for " + unauth.getName());
+        }
+    }
+
+    /**
+     * Successful logins are not counted.
+     */
+    public void success(Authentication unauth) {
+        if (!enabled) {
+            return;
+        }
+        String addr = address(unauth);
+        if (addr != null) {
+            release("i:" + addr, ip);
+        }
+        release("u:" + unauth.getName(), user);
+    }
+
+    public void failure(Authentication unauth) {
+        if (enabled) {
+            failed.put(digest(unauth), Boolean.TRUE);
+        }
+    }
+
+    static String address(Authentication unauth) {
+        Object d = unauth.getDetails();
+        if (d instanceof ExtendedWebAuthenticationDetails) {
+            ExtendedWebAuthenticationDetails ed = (ExtendedWebAuthenticationDetails) d;
+            return ed.getRealIp() != null ? ed.getRealIp() : ed.getRemoteAddress();
+        }
+        return null;
+    }
+
+    HashCode digest(Authentication unauth) {
+        return digests.newHasher()
+            .putString(unauth.getName(), StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(unauth.getCredentials() != null ? unauth.getCredentials().toString() : "", StandardCharsets.UTF_8)
+            .hash();
+    }
+
+    boolean acquire(String key, Limit limit) {
+        long h = keys.hashString(key, StandardCharsets.UTF_8).asLong();
+        Stripe s = stripes[(int) (h ^ (h >>> 32)) & mask];
+        long now = System.currentTimeMillis();
+        synchronized (s) {
+            Bucket b = s.get(h);
+            if (b == null) {
+                b = new Bucket();
+                b.tokens = limit.burst;
+                b.updated = now;
+                s.put(h, b);
+            } else {
+                b.tokens = Math.min(limit.burst, b.tokens + (now - b.updated) * limit.rate);
+                b.updated = now;
+            }
+            if (b.tokens < 1) {
+                return false;
+            }
+            b.tokens -= 1;
+            return true;
+        }
+    }
+
+    void release(String key, Limit limit) {
+        long h = keys.hashString(key, StandardCharsets.UTF_8).asLong();
+        Stripe s = stripes[(int) (h ^ (h >>> 32)) & mask];
+        synchronized (s) {
+            Bucket b = s.get(h);
+            if (b != null) {
+                b.tokens = Math.min(limit.burst, b.tokens + 1);
+            }
+        }
+    }
+
+    void count(String reason) {
+        if (registry != null) {
+            registry.counter("security.login.throttled", "reason", reason).increment();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.huksley.app.system;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Hashes and verifies bcrypt passwords, only for hashed and directory authenticators. Verification runs
+ * on dedicated bounded pool sized to CPU count, caller (i.e. {@link SecurityAuthenticatorAsync} executor thread)
+ * waits at most security.auth.hash.timeout, so login storms can`t tie up request or authenticator threads
+ * with CPU work. Successful verifications are cached for short time,
+ * keyed by HMAC with per process random key, so plain passwords are never kept.
+ *
+ * To hash password for configuration:
+ *
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=com.github.huksley.app.system.SecurityPasswordHasher -Dexec.args="PASSWORD [STRENGTH]"
+ * </pre>
+ */
+@Component
+@ConditionalOnExpression("'${security.auth.type:test}' == 'hashed' or '${security.auth.type:test}' == 'directory'")
+public class SecurityPasswordHasher {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired(required = false)
+    MeterRegistry registry;
+
+    BCryptPasswordEncoder encoder;
+
+    ThreadPoolExecutor executor;
+
+    long timeout;
+
+    Cache<HashCode, Boolean> verified;
+
+    HashFunction hmac;
+
+    Timer timer;
+
+    Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        int strength = env.getProperty("security.auth.hash.strength", Integer.class, 10);
+        int threads = env.getProperty("security.auth.hash.threads", Integer.class, Runtime.getRuntime().availableProcessors());
+        int queue = env.getProperty("security.auth.hash.queue", Integer.class, 100);
+        timeout = env.getProperty("security.auth.hash.timeout", Long.class, env.getProperty("security.auth.async.timeout", Long.class, 5000L));
+        long size = env.getProperty("security.auth.hash.cache.size", Long.class, 10000L);
+        long ttl = env.getProperty("security.auth.hash.cache.ttl", Long.class, 60L);
+
+        encoder = new BCryptPasswordEncoder(strength);
+
+        verified = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(ttl, TimeUnit.SECONDS).recordStats().build();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        hmac = Hashing.hmacSha256(key);
+
+        AtomicInteger n = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(queue, 1)), r -> {
+            Thread t = new Thread(r, "password-hash-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        if (registry != null) {
+            timer = registry.timer("security.auth.hash");
+            rejected = registry.counter("security.auth.hash.rejected");
+            registry.gauge("security.auth.hash.queue", executor, x -> x.getQueue().size());
+            registry.gauge("security.auth.hash.active", executor, ThreadPoolExecutor::getActiveCount);
+            GuavaCacheMetrics.monitor(registry, verified, "security.auth.hash.cache");
+        }
+        log.info("Password hashing strength {}, {} threads, queue {}, timeout {} ms, cache {} for {} s", strength, threads, queue, timeout, size, ttl);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hashes in calling thread, used on startup only
+     */
+    public String encode(CharSequence password) {
+        return encoder.encode(password);
+    }
+
+    public boolean matches(String username, CharSequence password, String hash) {
+        HashCode key = hmac.newHasher()
+            .putString(username, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(password, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(hash, StandardCharsets.UTF_8)
+            .hash();
+        if (verified.getIfPresent(key) != null) {
+            return true;
+        }
+        boolean ok = submit(() -> encoder.matches(password, hash));
+        if (ok) {
+            verified.put(key, Boolean.TRUE);
+        }
+        return ok;
+    }
+
+    <T> T submit(Callable<T> task) {
+        Callable<T> timed = timer != null ? () -> timer.recordCallable(task) : task;
+        Future<T> f;
+        try {
+            f = executor.submit(timed);
+        } catch (RejectedExecutionException e) {
+            if (rejected != null) {
+                rejected.increment();
+            }
+            throw new AuthenticationServiceException("Password hashing is busy");
+        }
+        try {
+            return f.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            f.cancel(true);
+            throw new AuthenticationServiceException("Password hashing timed out after " + timeout + " ms");
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new AuthenticationServiceException("Password hashing failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SecurityPasswordHasher PASSWORD [STRENGTH]");
+            System.exit(1);
+        }
+        int strength = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        System.out.println(new BCryptPasswordEncoder(strength).encode(args[0]));
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.huksley.app.system;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Distributes token revocations between nodes.
+ */
+public interface SecurityRevocationBus {
+
+    /**
+     * Sends revocation of token id (jti) valid until expiresAt (ms) to all nodes.
+     */
+    void publish(String jti, long expiresAt);
+
+    /**
+     * Delivers currently revoked tokens and all future revocations to listener.
+     */
+    void subscribe(BiConsumer<String, Long> listener);
+}
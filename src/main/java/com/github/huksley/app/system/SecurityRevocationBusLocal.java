@@ -0,0 +1,29 @@
+package com.github.huksley.app.system;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory revocation bus for tests and single node deployments.
+ */
+@Component
+@ConditionalOnProperty(name = "security.revocation.type", havingValue = "local", matchIfMissing = true)
+public class SecurityRevocationBusLocal implements SecurityRevocationBus {
+    final List<BiConsumer<String, Long>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String jti, long expiresAt) {
+        for (BiConsumer<String, Long> l: listeners) {
+            l.accept(jti, expiresAt);
+        }
+    }
+
+    @Override
+    public void subscribe(BiConsumer<String, Long> listener) {
+        listeners.add(listener);
+    }
+}
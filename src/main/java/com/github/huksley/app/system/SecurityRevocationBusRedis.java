@@ -0,0 +1,132 @@
+package com.github.huksley.app.system;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Redis revocation bus. Revoked tokens are kept in sorted set (score is expiration)
+ * for nodes which start later, and announced to running nodes using pub/sub.
+ * Revocations which can`t be published while Redis is down are retried every security.revocation.retry ms.
+ */
+@Component
+@ConditionalOnProperty(name = "security.revocation.type", havingValue = "redis")
+public class SecurityRevocationBusRedis implements SecurityRevocationBus {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    JedisPool pool;
+
+    String channel;
+
+    String key;
+
+    final List<BiConsumer<String, Long>> listeners = new CopyOnWriteArrayList<>();
+
+    RedisSubscriber subscriber;
+
+    /**
+     * jti -&gt; expiration (ms) of revocations not published yet
+     */
+    final Map<String, Long> unpublished = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        channel = env.getProperty("security.revocation.channel", "auth:revoked");
+        key = channel + ":set";
+        subscriber = new RedisSubscriber(pool, channel, this::load, (channel, message) -> {
+            int i = message.lastIndexOf(':');
+            if (i > 0) {
+                deliver(message.substring(0, i), Long.parseLong(message.substring(i + 1)));
+            }
+        }).start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        subscriber.stop();
+    }
+
+    /**
+     * Loads currently revoked tokens, on every (re)connect.
+     */
+    void load(Jedis j) {
+        load(j, this::deliver);
+    }
+
+    void load(Jedis j, BiConsumer<String, Long> listener) {
+        long now = System.currentTimeMillis();
+        j.zremrangeByScore(key, 0, now);
+        for (Tuple t: j.zrangeByScoreWithScores(key, now, Double.MAX_VALUE)) {
+            listener.accept(t.getElement(), (long) t.getScore());
+        }
+    }
+
+    void deliver(String jti, long expiresAt) {
+        for (BiConsumer<String, Long> l: listeners) {
+            l.accept(jti, expiresAt);
+        }
+    }
+
+    /**
+     * Publishes or keeps revocation for {@link #retry()}, never fails, since caller has revoked token locally already.
+     */
+    @Override
+    public void publish(String jti, long expiresAt) {
+        try (Jedis j = pool.getResource()) {
+            j.zadd(key, expiresAt, jti);
+            j.publish(channel, jti + ":" + expiresAt);
+            unpublished.remove(jti);
+        } catch (JedisException e) {
+            log.warn("Can`t publish revocation of {}, will retry: {}", jti, e.toString());
+            unpublished.put(jti, expiresAt);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.revocation.retry:5000}")
+    public void retry() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> e: unpublished.entrySet()) {
+            if (e.getValue() != 0 && e.getValue() < now) {
+                unpublished.remove(e.getKey());
+            } else {
+                publish(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds listener and replays currently revoked tokens to it, subscriber may have loaded them before listener was added.
+     */
+    @Override
+    public void subscribe(BiConsumer<String, Long> listener) {
+        listeners.add(listener);
+        try (Jedis j = pool.getResource()) {
+            load(j, listener);
+        } catch (JedisException e) {
+            // Subscriber loads them to all listeners on reconnect
+            log.warn("Can`t load revoked tokens: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.huksley.app.system;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Revoked token ids (jti). Bloom filter is checked first, so tokens which are not revoked
+ * pay only a few hash probes, exact set confirms positive results.
+ * Revocations are distributed to other nodes by {@link SecurityRevocationBus}.
+ */
+@Component
+public class SecurityRevocationList {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    SecurityRevocationBus bus;
+
+    /**
+     * jti -&gt; token expiration (ms)
+     */
+    final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    volatile BloomFilter<CharSequence> bloom;
+
+    @PostConstruct
+    public void init() {
+        bloom = createFilter();
+        bus.subscribe(this::add);
+    }
+
+    protected BloomFilter<CharSequence> createFilter() {
+        int expected = env.getProperty("security.revocation.expected", Integer.class, 100000);
+        double fpp = env.getProperty("security.revocation.fpp", Double.class, 0.01);
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expected, fpp);
+    }
+
+    /**
+     * Revokes token on all nodes.
+     */
+    public void revoke(String jti, long expiresAt) {
+        log.info("Revoking token {}", jti);
+        add(jti, expiresAt);
+        bus.publish(jti, expiresAt);
+    }
+
+    void add(String jti, long expiresAt) {
+        if (expiresAt != 0 && expiresAt < System.currentTimeMillis()) {
+            return;
+        }
+        // Exact set first, so prune() never loses concurrent additions
+        revoked.put(jti, expiresAt);
+        bloom.put(jti);
+    }
+
+    public boolean isRevoked(String jti) {
+        return jti != null && bloom.mightContain(jti) && revoked.containsKey(jti);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Removes expired tokens and rebuilds bloom filter, since it can`t remove entries.
+     */
+    @Scheduled(fixedDelayString = "${security.revocation.prune:60000}")
+    public void prune() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Iterator<Map.Entry<String, Long>> it = revoked.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getValue() != 0 && e.getValue() < now) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            BloomFilter<CharSequence> f = createFilter();
+            revoked.keySet().forEach(f::put);
+            bloom = f;
+            // Catch additions made while rebuilding
+            revoked.keySet().forEach(f::put);
+            log.info("Pruned {} revoked tokens, {} left", removed, revoked.size());
+        }
+    }
+}
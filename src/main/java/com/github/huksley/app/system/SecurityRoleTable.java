@@ -0,0 +1,87 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+/**
+ * Known role table used to encode roles in compact tokens as a bitmap.
+ * Order of jwt.roles must be stable across nodes, new roles can only be appended.
+ */
+@Component
+public class SecurityRoleTable {
+    public static final int MAX_ROLES = 63;
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    List<String> roles;
+
+    Map<String, Integer> index;
+
+    @PostConstruct
+    public void init() {
+        String s = env.getProperty("jwt.roles", "ROLE_USER,ROLE_ADMIN,ROLE_AUTH_PASSWORD,ROLE_AUTH_SYSTEM");
+        List<String> l = new ArrayList<>();
+        Map<String, Integer> m = new HashMap<>();
+        for (StringTokenizer tk = new StringTokenizer(s, ", "); tk.hasMoreTokens();) {
+            String role = tk.nextToken().trim();
+            if (l.size() >= MAX_ROLES) {
+                throw new IllegalStateException("Too many roles in jwt.roles, max " + MAX_ROLES);
+            }
+            if (!m.containsKey(role)) {
+                m.put(role, l.size());
+                l.add(role);
+            }
+        }
+        roles = Collections.unmodifiableList(l);
+        index = m;
+        log.info("Role table {}", roles);
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * Encodes known roles as bitmap, roles not in table are added to unknown list.
+     */
+    public long encode(Collection<? extends GrantedAuthority> authorities, List<String> unknown) {
+        long bits = 0;
+        for (GrantedAuthority a: authorities) {
+            Integer i = index.get(a.getAuthority());
+            if (i != null) {
+                bits |= 1L << i;
+            } else {
+                unknown.add(a.getAuthority());
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Decodes bitmap into authorities.
+     */
+    public void decode(long bits, AuthoritySet.Builder authorities) {
+        for (int i = 0; i < roles.size(); i++) {
+            if ((bits & (1L << i)) != 0) {
+                authorities.add(roles.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Auth page templates (login, user, css) rendered once at startup into immutable buffers,
+ * with gzip variant and strong ETag, so serving them needs no I/O and allows 304 responses.
+ * Set security.auth.templates.reload=true in development to re-read them when changed,
+ * from security.auth.templates.dir if set, otherwise from classpath on every request.
+ * Stylesheet depends only on auth type and role set, so it is rendered once per distinct role set.
+ */
+@Component
+public class SecurityTemplates {
+    public static final String LOGIN = "login";
+    public static final String USER = "user";
+    public static final String CSS = "css";
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    boolean reload;
+
+    File dir;
+
+    final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Rendered stylesheets per role set.
+     */
+    Cache<AuthoritySet, Template> css;
+
+    String cssCacheControl;
+
+    /**
+     * Rendered template, body and gzip variant are never modified after creation.
+     */
+    public static class Template {
+        final String contentType;
+        final byte[] body;
+        final byte[] gzip;
+        final String etag;
+        final String gzipEtag;
+        final long modified;
+        final String cacheControl;
+
+        Template(String contentType, byte[] body, long modified) {
+            this(contentType, body, modified, null);
+        }
+
+        Template(String contentType, byte[] body, long modified, String cacheControl) {
+            this.contentType = contentType;
+            this.body = body;
+            this.modified = modified;
+            this.cacheControl = cacheControl;
+            byte[] z = gzip(body);
+            // Not worth it for tiny responses
+            this.gzip = z.length < body.length ? z : null;
+            String h = hash(body);
+            this.etag = "\"" + h + "\"";
+            this.gzipEtag = "\"" + h + "-gz\"";
+        }
+
+        public static Template of(String contentType, String body) {
+            return new Template(contentType, body.getBytes(StandardCharsets.UTF_8), 0);
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        reload = env.getProperty("security.auth.templates.reload", Boolean.class, false);
+        String d = env.getProperty("security.auth.templates.dir");
+        dir = d != null && !d.isEmpty() ? new File(d) : null;
+        css = CacheBuilder.newBuilder().maximumSize(env.getProperty("security.auth.css.cache.size", Integer.class, 1000)).build();
+        cssCacheControl = "private, max-age=" + env.getProperty("security.auth.css.maxage", Integer.class, 3600);
+        for (String name: new String[] { LOGIN, USER, CSS }) {
+            templates.put(name, load(name));
+        }
+        log.info("Loaded auth templates, reload {}, dir {}", reload, dir);
+    }
+
+    /**
+     * Returns rendered template, reloads it first in development mode.
+     */
+    public Template get(String name) {
+        Template t = templates.get(name);
+        if (reload && (dir == null || t == null || t.modified != modified(name))) {
+            t = load(name);
+            templates.put(name, t);
+            if (CSS.equals(name)) {
+                css.invalidateAll();
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Returns stylesheet for role set, rendered on first use.
+     */
+    public Template css(Collection<? extends GrantedAuthority> authorities) {
+        Template base = get(CSS);
+        AuthoritySet roles = authorities != null ? AuthoritySet.of(authorities) : AuthoritySet.EMPTY;
+        Template t = css.getIfPresent(roles);
+        if (t == null) {
+            StringBuilder s = new StringBuilder();
+            for (GrantedAuthority aa: roles) {
+                s.append("\n\n.role_").append(aa.getAuthority().replace("ROLE_", "")).append(" {\n");
+                s.append("    display: block;\n");
+                s.append("}");
+            }
+            byte[] suffix = s.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] body = Arrays.copyOf(base.body, base.body.length + suffix.length);
+            System.arraycopy(suffix, 0, body, base.body.length, suffix.length);
+            t = new Template(base.contentType, body, base.modified, cssCacheControl);
+            css.put(roles, t);
+        }
+        return t;
+    }
+
+    Template load(String name) {
+        if (LOGIN.equals(name)) {
+            String s = read("login.html");
+            return new Template("text/html", s.replace("<title>", "<BASE HREF=\"/auth/login.html\"><title>").getBytes(StandardCharsets.UTF_8), modified(name));
+        } else
+        if (USER.equals(name)) {
+            String s = read("user.html");
+            return new Template("text/html", s.replace("<title>", "<BASE HREF=\"/auth/forms/user.html\"><title>").getBytes(StandardCharsets.UTF_8), modified(name));
+        } else
+        if (CSS.equals(name)) {
+            String s = read("template.css");
+            s += "\n\n.authtype_" + env.getProperty("security.auth.type", "test") + " {\n" +
+                "    display: block;\n" +
+                "}";
+            return new Template("text/css", s.getBytes(StandardCharsets.UTF_8), modified(name));
+        } else {
+            throw new IllegalArgumentException("Unknown template: " + name);
+        }
+    }
+
+    String file(String name) {
+        return CSS.equals(name) ? "template.css" : name + ".html";
+    }
+
+    long modified(String name) {
+        return dir != null ? new File(dir, file(name)).lastModified() : 0;
+    }
+
+    String read(String file) {
+        try {
+            if (dir != null) {
+                File f = new File(dir, file);
+                if (f.exists()) {
+                    return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+                }
+            }
+            try (InputStream is = getClass().getResourceAsStream("/static/auth/" + file)) {
+                if (is == null) {
+                    throw new IllegalStateException("Auth template not found: " + file);
+                }
+                return new String(StreamUtils.copyToByteArray(is), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can`t read auth template " + file + ": " + e, e);
+        }
+    }
+
+    /**
+     * Writes template, honoring If-None-Match and Accept-Encoding.
+     */
+    public void serve(Template t, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean gzip = t.gzip != null && acceptsGzip(request.getHeader("Accept-Encoding"));
+        String etag = gzip ? t.gzipEtag : t.etag;
+        response.setContentType(t.contentType);
+        response.setHeader("ETag", etag);
+        if (t.cacheControl != null) {
+            response.setHeader("Cache-Control", t.cacheControl);
+        }
+        if (t.gzip != null) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        if (matches(request.getHeader("If-None-Match"), t)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] body = gzip ? t.gzip : t.body;
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    static boolean matches(String ifNoneMatch, Template t) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (StringTokenizer tk = new StringTokenizer(ifNoneMatch, ","); tk.hasMoreTokens();) {
+            String s = tk.nextToken().trim();
+            if (s.startsWith("W/")) {
+                s = s.substring(2);
+            }
+            if (s.equals("*") || s.equals(t.etag) || s.equals(t.gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (StringTokenizer tk = new StringTokenizer(acceptEncoding, ","); tk.hasMoreTokens();) {
+            String s = tk.nextToken().trim();
+            int q = s.indexOf(';');
+            String coding = q >= 0 ? s.substring(0, q).trim() : s;
+            if (coding.equalsIgnoreCase("gzip") || coding.equals("*")) {
+                return q < 0 || !s.substring(q + 1).replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (GZIPOutputStream os = new GZIPOutputStream(buf)) {
+            os.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can`t gzip: " + e, e);
+        }
+        return buf.toByteArray();
+    }
+
+    static String hash(byte[] data) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(data);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(h, 18));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Can`t hash: " + e, e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.huksley.app.system;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.github.huksley.app.system.SecurityConfigurer.TokenAuthentication;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Bounded cache of already verified JWT tokens, keyed by SHA-256 digest of the token.
+ * Cached entries never outlive token expiration.
+ */
+@Component
+public class SecurityTokenCache {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    @Autowired(required = false)
+    MeterRegistry registry;
+
+    Cache<HashCode, TokenAuthentication> cache;
+
+    @PostConstruct
+    public void init() {
+        long size = env.getProperty("security.token.cache.size", Long.class, 10000L);
+        long ttl = env.getProperty("security.token.cache.ttl", Long.class, 300L);
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterWrite(ttl, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        if (registry != null) {
+            GuavaCacheMetrics.monitor(registry, cache, "security.token.cache");
+        }
+        log.info("Token cache size {}, ttl {} s", size, ttl);
+    }
+
+    /**
+     * Returns previously verified auth for this token or null if there is none or token expired.
+     */
+    public TokenAuthentication get(String jwt) {
+        HashCode key = key(jwt);
+        TokenAuthentication auth = cache.getIfPresent(key);
+        if (auth != null && auth.getExpiresAt() > 0 && auth.getExpiresAt() <= System.currentTimeMillis()) {
+            // Never serve beyond token exp, let parser report expiration
+            cache.invalidate(key);
+            return null;
+        }
+        return auth;
+    }
+
+    /**
+     * Remembers verified token auth.
+     */
+    public void put(String jwt, TokenAuthentication auth) {
+        cache.put(key(jwt), auth);
+    }
+
+    /**
+     * Drops all cached tokens, i.e. after signing key changes.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    protected HashCode key(String jwt) {
+        return Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8);
+    }
+}
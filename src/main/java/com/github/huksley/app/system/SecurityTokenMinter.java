@@ -0,0 +1,257 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.crypto.Mac;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mints JWT tokens without shared state on the hot path. Every thread has its own {@link Mac},
+ * buffers and jti sequence (virtual threads borrow them from {@link ThreadStates} pool), header bytes are serialized once per signing key.
+ * Produces the same tokens as jjwt builder, so they are verified by regular {@link SecurityKeyring} parser.
+ */
+@Component
+public class SecurityTokenMinter {
+    static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * Magic, deflate, no flags, no mtime, no extra flags, OS 0, as written by GZIPOutputStream
+     */
+    static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0 };
+
+    @Autowired
+    SecurityKeyring keyring;
+
+    @Autowired
+    SecurityRoleTable roleTable;
+
+    /**
+     * Pre-serialized headers for signing key.
+     */
+    static class Headers {
+        final SecurityKeyring.Keys keys;
+        final Key key;
+        final byte[] plain;
+        final byte[] gzip;
+
+        Headers(SecurityKeyring.Keys keys) {
+            this.keys = keys;
+            this.key = keys.getSigningKey();
+            String kid = keys.getKeyId();
+            String k = kid != null ? "\"kid\":\"" + escape(kid) + "\"," : "";
+            this.plain = BASE64.encode(("{" + k + "\"alg\":\"" + SecurityKeyring.ALGORITHM.getValue() + "\"}").getBytes(StandardCharsets.UTF_8));
+            this.gzip = BASE64.encode(("{" + k + "\"alg\":\"" + SecurityKeyring.ALGORITHM.getValue() + "\",\"zip\":\"GZIP\"}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Per thread signing state.
+     */
+    static class ThreadState {
+        Key key;
+        Mac mac;
+        final long node = ThreadLocalRandom.current().nextLong();
+        int seq;
+        final StringBuilder json = new StringBuilder(256);
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+        final byte[] id = new byte[16];
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final CRC32 crc = new CRC32();
+        final byte[] chunk = new byte[512];
+    }
+
+    volatile Headers headers;
+
+    /**
+     * Deflater holds native memory, free it when state does not fit into virtual thread pool
+     */
+    final ThreadStates<ThreadState> states = new ThreadStates<>(ThreadState::new, st -> st.deflater.end());
+
+    Headers headers() {
+        SecurityKeyring.Keys keys = keyring.getKeys();
+        Headers h = headers;
+        if (h == null || h.keys != keys) {
+            h = new Headers(keys);
+            headers = h;
+        }
+        return h;
+    }
+
+    /**
+     * Creates token in transport format (jwt:exp).
+     */
+    public String mint(String subject, Collection<? extends GrantedAuthority> authorities, long timeout, String format) {
+        return mint(subject, authorities, timeout, format, 0);
+    }
+
+    /**
+     * Creates token in transport format (jwt:exp), with original login time (ms), 0 for new login.
+     */
+    public String mint(String subject, Collection<? extends GrantedAuthority> authorities, long timeout, String format, long loginAt) {
+        Headers h = headers();
+        ThreadState st = states.acquire();
+        try {
+            long now = System.currentTimeMillis();
+            long exp = now + timeout;
+
+            StringBuilder json = st.json;
+            json.setLength(0);
+            json.append("{\"jti\":\"").append(nextId(st, now)).append('"');
+            json.append(",\"iat\":").append(now / 1000);
+            json.append(",\"").append(SecurityConfigurer.CLAIM_LOGIN).append("\":").append((loginAt != 0 ? loginAt : now) / 1000);
+            json.append(",\"sub\":\"").append(escape(subject)).append('"');
+
+            boolean zip = !SecurityConfigurer.TOKEN_FORMAT_V2.equals(format);
+            if (zip) {
+                json.append(",\"aud\":\"");
+                boolean first = true;
+                for (GrantedAuthority a: authorities) {
+                    // Token role is added on restore
+                    if (a.getAuthority().equals(SecurityConfigurer.ROLE_AUTH_TOKEN)) {
+                        continue;
+                    }
+                    if (!first) {
+                        json.append(", ");
+                    }
+                    json.append(escape(a.getAuthority()));
+                    first = false;
+                }
+                json.append('"');
+            } else {
+                // Known roles as bitmap, others (if any) in aud
+                List<String> unknown = new ArrayList<>(0);
+                json.append(",\"").append(SecurityConfigurer.CLAIM_ROLES).append("\":").append(roleTable.encode(authorities, unknown));
+                unknown.remove(SecurityConfigurer.ROLE_AUTH_TOKEN);
+                if (!unknown.isEmpty()) {
+                    json.append(",\"aud\":\"").append(escape(String.join(",", unknown))).append('"');
+                }
+            }
+            json.append(",\"exp\":").append(exp / 1000).append('}');
+
+            byte[] header = zip ? h.gzip : h.plain;
+            byte[] payload = BASE64.encode(zip ? gzip(st, json) : json.toString().getBytes(StandardCharsets.UTF_8));
+            Mac mac = mac(st, h.key);
+            mac.update(header);
+            mac.update((byte) '.');
+            mac.update(payload);
+            byte[] signature = BASE64.encode(mac.doFinal());
+
+            StringBuilder token = new StringBuilder(header.length + payload.length + signature.length + 16);
+            append(token, header).append('.');
+            append(token, payload).append('.');
+            append(token, signature);
+            return token.append(':').append(exp).toString();
+        } finally {
+            states.release(st);
+        }
+    }
+
+    /**
+     * Time ordered unique id: 48 bit timestamp, 16 bit per thread sequence, 64 bit per thread random node.
+     */
+    String nextId(ThreadState st, long now) {
+        byte[] b = st.id;
+        for (int i = 5; i >= 0; i--) {
+            b[5 - i] = (byte) (now >>> (i * 8));
+        }
+        int seq = st.seq++;
+        b[6] = (byte) (seq >>> 8);
+        b[7] = (byte) seq;
+        for (int i = 0; i < 8; i++) {
+            b[8 + i] = (byte) (st.node >>> (i * 8));
+        }
+        return BASE64.encodeToString(b);
+    }
+
+    Mac mac(ThreadState st, Key key) {
+        if (st.key != key) {
+            try {
+                Mac mac = Mac.getInstance(SecurityKeyring.ALGORITHM.getJcaName());
+                mac.init(key);
+                st.mac = mac;
+                st.key = key;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Can`t init " + SecurityKeyring.ALGORITHM + ": " + e, e);
+            }
+        }
+        return st.mac;
+    }
+
+    /**
+     * Same output as {@link java.util.zip.GZIPOutputStream} but reuses per thread {@link Deflater}.
+     */
+    byte[] gzip(ThreadState st, CharSequence json) {
+        byte[] data = json.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream buf = st.buf;
+        buf.reset();
+        buf.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+
+        Deflater d = st.deflater;
+        d.reset();
+        d.setInput(data);
+        d.finish();
+        while (!d.finished()) {
+            int n = d.deflate(st.chunk);
+            buf.write(st.chunk, 0, n);
+        }
+
+        st.crc.reset();
+        st.crc.update(data);
+        writeInt(buf, (int) st.crc.getValue());
+        writeInt(buf, data.length);
+        return buf.toByteArray();
+    }
+
+    static void writeInt(ByteArrayOutputStream buf, int v) {
+        buf.write(v);
+        buf.write(v >>> 8);
+        buf.write(v >>> 16);
+        buf.write(v >>> 24);
+    }
+
+    static StringBuilder append(StringBuilder sb, byte[] ascii) {
+        for (byte b: ascii) {
+            sb.append((char) b);
+        }
+        return sb;
+    }
+
+    /**
+     * Escapes JSON string value.
+     */
+    static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                if (sb == null) {
+                    sb = new StringBuilder(s.length() + 8).append(s, 0, i);
+                }
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else {
+                    sb.append(String.format("\\u%04x", (int) c));
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : s;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.huksley.app.system;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Externalized HTTP sessions, if security.session.store is redis or memory.
+ * By default (container) servlet container keeps sessions in memory.
+ */
+@Configuration
+@ConditionalOnExpression("'${security.session.store:container}' != 'container'")
+public class SessionConfig {
+    /**
+     * Before Spring Security and everything else which might use session
+     */
+    public static final int FILTER_ORDER = Ordered.HIGHEST_PRECEDENCE + 50;
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    SessionStore store;
+
+    @Bean
+    public SessionStore sessionStore(ObjectProvider<JedisPool> pool) {
+        String type = env.getProperty("security.session.store");
+        if ("redis".equals(type)) {
+            store = new SessionStoreRedis(pool.getObject(), env.getProperty("security.session.prefix", "session:"));
+        } else if ("memory".equals(type)) {
+            store = new SessionStoreMemory();
+        } else {
+            throw new IllegalStateException("Unknown security.session.store: " + type);
+        }
+        log.info("Using {} session store", type);
+        return store;
+    }
+
+    @Bean
+    public FilterRegistrationBean<SessionRepositoryFilter> sessionRepositoryFilter(SessionStore store) {
+        SessionRepositoryFilter f = new SessionRepositoryFilter(store,
+            env.getProperty("security.session.cookie", "SESSION"),
+            env.getProperty("server.servlet.session.timeout", Integer.class, 1800),
+            env.getProperty("security.session.touch", Long.class, 60000L));
+        FilterRegistrationBean<SessionRepositoryFilter> reg = new FilterRegistrationBean<>(f);
+        reg.setOrder(FILTER_ORDER);
+        reg.setDispatcherTypes(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC, DispatcherType.ERROR));
+        reg.setUrlPatterns(Arrays.asList("/*"));
+        return reg;
+    }
+
+    @Scheduled(fixedDelayString = "${security.session.prune:60000}")
+    public void prune() {
+        if (store instanceof SessionStoreMemory) {
+            ((SessionStoreMemory) store).prune();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.github.huksley.app.system;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Replaces container {@link HttpSession} with {@link StoredSession}. Session id is passed in cookie,
+ * changes are written to {@link SessionStore} before redirect or error is sent, and at the end of request.
+ */
+public class SessionRepositoryFilter extends OncePerRequestFilter {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SessionStore store;
+    private final String cookieName;
+    private final int maxInactiveInterval;
+    private final long touchInterval;
+
+    public SessionRepositoryFilter(SessionStore store, String cookieName, int maxInactiveInterval, long touchInterval) {
+        this.store = store;
+        this.cookieName = cookieName;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.touchInterval = touchInterval;
+    }
+
+    static String newId() {
+        byte[] b = new byte[24];
+        RANDOM.nextBytes(b);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+
+    @Override
+    protected boolean shouldNotFilterErrorDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        SessionRequest req = new SessionRequest(request, response);
+        HttpServletResponse resp = new HttpServletResponseWrapper(response) {
+            @Override
+            public void sendRedirect(String location) throws IOException {
+                req.commit();
+                super.sendRedirect(location);
+            }
+
+            @Override
+            public void sendError(int sc) throws IOException {
+                req.commit();
+                super.sendError(sc);
+            }
+
+            @Override
+            public void sendError(int sc, String msg) throws IOException {
+                req.commit();
+                super.sendError(sc, msg);
+            }
+
+            @Override
+            public void flushBuffer() throws IOException {
+                req.commit();
+                super.flushBuffer();
+            }
+        };
+
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            req.commit();
+        }
+    }
+
+    class SessionRequest extends HttpServletRequestWrapper {
+        private final HttpServletResponse response;
+        private boolean resolved;
+        private String requestedId;
+        private StoredSession session;
+        private final List<StoredSession> invalidated = new ArrayList<>(0);
+
+        SessionRequest(HttpServletRequest request, HttpServletResponse response) {
+            super(request);
+            this.response = response;
+        }
+
+        StoredSession requested() {
+            if (!resolved) {
+                resolved = true;
+                requestedId = TokenResolver.cookie((HttpServletRequest) getRequest(), cookieName);
+                if (requestedId != null) {
+                    SessionStore.Meta meta = store.load(requestedId);
+                    if (meta != null && !meta.isExpired(System.currentTimeMillis())) {
+                        session = new StoredSession(store, getServletContext(), requestedId, meta);
+                    }
+                }
+            }
+            return session;
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            StoredSession s = requested();
+            if (s != null && !s.isInvalid()) {
+                return s;
+            }
+            if (!create) {
+                return null;
+            }
+            if (s != null) {
+                invalidated.add(s);
+            }
+            session = new StoredSession(store, getServletContext(), newId(), maxInactiveInterval);
+            writeCookie(session.getId());
+            return session;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return getSession(true);
+        }
+
+        @Override
+        public String changeSessionId() {
+            StoredSession s = (StoredSession) getSession(false);
+            if (s == null) {
+                throw new IllegalStateException("No session to change id");
+            }
+            s.changeId(newId());
+            writeCookie(s.getId());
+            return s.getId();
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            requested();
+            return requestedId;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdValid() {
+            StoredSession s = requested();
+            return s != null && !s.isInvalid() && s.getId().equals(requestedId);
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromCookie() {
+            return getRequestedSessionId() != null;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromURL() {
+            return false;
+        }
+
+        @Override
+        @Deprecated
+        public boolean isRequestedSessionIdFromUrl() {
+            return false;
+        }
+
+        void writeCookie(String id) {
+            if (response.isCommitted()) {
+                return;
+            }
+            Cookie c = new Cookie(cookieName, id);
+            String path = getContextPath();
+            c.setPath(path == null || path.isEmpty() ? "/" : path);
+            c.setHttpOnly(true);
+            c.setSecure(isSecure());
+            response.addCookie(c);
+        }
+
+        void commit() {
+            for (StoredSession s: invalidated) {
+                s.commit(touchInterval);
+            }
+            invalidated.clear();
+            if (session != null) {
+                session.commit(touchInterval);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.security.authentication.AccountExpiredException;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.authentication.LockedException;
+import org.springframework.security.authentication.ProviderNotFoundException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.authentication.session.SessionAuthenticationException;
+
+import com.github.huksley.app.system.SecurityConfigurer.TokenAuthentication;
+
+/**
+ * Compact binary format for session attributes. Security context, authentication tokens,
+ * authentication errors and simple values are written field by field, anything else with Java serialization,
+ * read back only for allowed classes, see {@link #JAVA_ALLOWED}. Credentials are never written.
+ */
+public class SessionSerializer {
+    static final int VERSION = 1;
+
+    static final int NULL = 0;
+    static final int STRING = 1;
+    static final int BOOLEAN = 2;
+    static final int INTEGER = 3;
+    static final int LONG = 4;
+    static final int CONTEXT = 5;
+    static final int PASSWORD_AUTH = 6;
+    static final int TOKEN_AUTH = 7;
+    static final int USER = 8;
+    static final int ERROR = 9;
+    static final int JAVA = 127;
+
+    public static byte[] serialize(Object value) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+        try (DataOutputStream os = new DataOutputStream(bos)) {
+            os.writeByte(VERSION);
+            write(os, value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can`t serialize " + value.getClass() + ": " + e, e);
+        }
+        return bos.toByteArray();
+    }
+
+    public static Object deserialize(byte[] b) {
+        try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(b))) {
+            int version = is.readByte();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported session format: " + version);
+            }
+            return read(is);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Can`t deserialize session attribute: " + e, e);
+        }
+    }
+
+    static void write(DataOutputStream os, Object v) throws IOException {
+        if (v == null) {
+            os.writeByte(NULL);
+        } else if (v instanceof String) {
+            os.writeByte(STRING);
+            os.writeUTF((String) v);
+        } else if (v instanceof Boolean) {
+            os.writeByte(BOOLEAN);
+            os.writeBoolean((Boolean) v);
+        } else if (v instanceof Integer) {
+            os.writeByte(INTEGER);
+            os.writeInt((Integer) v);
+        } else if (v instanceof Long) {
+            os.writeByte(LONG);
+            os.writeLong((Long) v);
+        } else if (v.getClass() == SecurityContextImpl.class) {
+            os.writeByte(CONTEXT);
+            write(os, ((SecurityContext) v).getAuthentication());
+        } else if (v.getClass() == UsernamePasswordAuthenticationToken.class) {
+            Authentication a = (Authentication) v;
+            os.writeByte(PASSWORD_AUTH);
+            os.writeBoolean(a.isAuthenticated());
+            write(os, a.getPrincipal());
+            writeAuthorities(os, a.getAuthorities());
+            write(os, a.getDetails());
+        } else if (v.getClass() == TokenAuthentication.class) {
+            TokenAuthentication a = (TokenAuthentication) v;
+            os.writeByte(TOKEN_AUTH);
+            os.writeUTF(a.getName());
+            writeAuthorities(os, a.getAuthorities());
+            os.writeLong(a.getExpiresAt());
+            write(os, a.getToken());
+            os.writeLong(a.getIssuedAt());
+            write(os, a.getId());
+            os.writeLong(a.getLoginAt());
+        } else if (v.getClass() == User.class) {
+            User u = (User) v;
+            os.writeByte(USER);
+            os.writeUTF(u.getUsername());
+            os.writeByte((u.isEnabled() ? 1 : 0) | (u.isAccountNonExpired() ? 2 : 0) | (u.isCredentialsNonExpired() ? 4 : 0) | (u.isAccountNonLocked() ? 8 : 0));
+            writeAuthorities(os, u.getAuthorities());
+        } else if (v instanceof AuthenticationException) {
+            os.writeByte(ERROR);
+            writeError(os, (Throwable) v);
+        } else {
+            os.writeByte(JAVA);
+            ObjectOutputStream oos = new ObjectOutputStream(os);
+            oos.writeObject(v);
+            oos.flush();
+        }
+    }
+
+    static Object read(DataInputStream is) throws IOException, ClassNotFoundException {
+        int type = is.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return is.readUTF();
+            case BOOLEAN:
+                return is.readBoolean();
+            case INTEGER:
+                return is.readInt();
+            case LONG:
+                return is.readLong();
+            case CONTEXT:
+                return new SecurityContextImpl((Authentication) read(is));
+            case PASSWORD_AUTH: {
+                boolean authenticated = is.readBoolean();
+                Object principal = read(is);
+                AuthoritySet authorities = readAuthorities(is);
+                Object details = read(is);
+                UsernamePasswordAuthenticationToken a = authenticated
+                    ? new UsernamePasswordAuthenticationToken(principal, null, authorities)
+                    : new UsernamePasswordAuthenticationToken(principal, null);
+                a.setDetails(details);
+                return a;
+            }
+            case TOKEN_AUTH: {
+                String name = is.readUTF();
+                AuthoritySet authorities = readAuthorities(is);
+                long expiresAt = is.readLong();
+                String token = (String) read(is);
+                long issuedAt = is.readLong();
+                String id = (String) read(is);
+                long loginAt = is.readLong();
+                // Constructor takes TTL, where 0 means never expires
+                long ttl = expiresAt != 0 ? expiresAt - System.currentTimeMillis() : 0;
+                if (expiresAt != 0 && ttl == 0) {
+                    ttl = -1;
+                }
+                return new TokenAuthentication(name, authorities, ttl, token, issuedAt, id, loginAt);
+            }
+            case USER: {
+                String name = is.readUTF();
+                int flags = is.readByte();
+                return new User(name, "", (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0, readAuthorities(is));
+            }
+            case ERROR:
+                return readError(is, true);
+            case JAVA:
+                return new FilteringObjectInputStream(is).readObject();
+            default:
+                throw new IOException("Unknown type " + type);
+        }
+    }
+
+    static void writeAuthorities(DataOutputStream os, Collection<? extends GrantedAuthority> authorities) throws IOException {
+        os.writeShort(authorities.size());
+        for (GrantedAuthority a: authorities) {
+            os.writeUTF(a.getAuthority());
+        }
+    }
+
+    static AuthoritySet readAuthorities(DataInputStream is) throws IOException {
+        int n = is.readShort();
+        AuthoritySet.Builder b = new AuthoritySet.Builder();
+        for (int i = 0; i < n; i++) {
+            b.add(is.readUTF());
+        }
+        return b.build();
+    }
+
+    /**
+     * Class name, message and cause chain, without stack traces.
+     */
+    static void writeError(DataOutputStream os, Throwable e) throws IOException {
+        os.writeUTF(e.getClass().getName());
+        write(os, e.getMessage());
+        Throwable cause = e.getCause();
+        os.writeBoolean(cause != null && cause != e);
+        if (cause != null && cause != e) {
+            writeError(os, cause);
+        }
+    }
+
+    /**
+     * Only these errors are rebuilt as is, anything else becomes {@link AuthenticationServiceException}
+     * (or {@link RuntimeException} as cause) with original class name in the message.
+     */
+    static final Map<String, Function<String, AuthenticationException>> ERRORS = new HashMap<>();
+    static {
+        error(BadCredentialsException.class, BadCredentialsException::new);
+        error(UsernameNotFoundException.class, UsernameNotFoundException::new);
+        error(LockedException.class, LockedException::new);
+        error(DisabledException.class, DisabledException::new);
+        error(AccountExpiredException.class, AccountExpiredException::new);
+        error(CredentialsExpiredException.class, CredentialsExpiredException::new);
+        error(AuthenticationServiceException.class, AuthenticationServiceException::new);
+        error(InternalAuthenticationServiceException.class, InternalAuthenticationServiceException::new);
+        error(InsufficientAuthenticationException.class, InsufficientAuthenticationException::new);
+        error(ProviderNotFoundException.class, ProviderNotFoundException::new);
+        error(SessionAuthenticationException.class, SessionAuthenticationException::new);
+        error(LoginThrottledException.class, LoginThrottledException::new);
+    }
+
+    static void error(Class<? extends AuthenticationException> c, Function<String, AuthenticationException> factory) {
+        ERRORS.put(c.getName(), factory);
+    }
+
+    static Throwable readError(DataInputStream is, boolean top) throws IOException, ClassNotFoundException {
+        String type = is.readUTF();
+        String message = (String) read(is);
+        Throwable cause = is.readBoolean() ? readError(is, false) : null;
+        Function<String, AuthenticationException> factory = ERRORS.get(type);
+        Throwable e;
+        if (factory != null) {
+            e = factory.apply(message);
+        } else {
+            String text = message != null ? type + ": " + message : type;
+            e = top ? new AuthenticationServiceException(text) : new RuntimeException(text);
+        }
+        if (cause != null && e.getCause() == null) {
+            e.initCause(cause);
+        }
+        e.setStackTrace(new StackTraceElement[0]);
+        return e;
+    }
+
+    /**
+     * Java serialization fallback resolves only classes from these packages, so data in session store
+     * can`t make application instantiate arbitrary classes.
+     */
+    static final String[] JAVA_ALLOWED = {
+        "java.lang.",
+        "java.util.",
+        "java.time.",
+        "javax.servlet.http.Cookie",
+        "org.springframework.security.",
+        "com.github.huksley.app."
+    };
+
+    static boolean isAllowed(String name) {
+        int i = 0;
+        while (i < name.length() && name.charAt(i) == '[') {
+            i++;
+        }
+        if (i > 0) {
+            if (i == name.length()) {
+                return false;
+            }
+            // Primitive array, e.g. [B
+            if (name.charAt(i) != 'L') {
+                return name.length() == i + 1;
+            }
+            name = name.substring(i + 1, name.length() - 1);
+        }
+        // SerializedLambda and reflection
+        if (name.startsWith("java.lang.invoke.") || name.startsWith("java.lang.reflect.")) {
+            return false;
+        }
+        for (String p: JAVA_ALLOWED) {
+            if (name.startsWith(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class FilteringObjectInputStream extends ObjectInputStream {
+        FilteringObjectInputStream(InputStream is) throws IOException {
+            super(is);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Not allowed in session attribute");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy classes are not allowed in session attribute");
+        }
+    }
+}
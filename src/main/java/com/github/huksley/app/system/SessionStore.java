@@ -0,0 +1,46 @@
+package com.github.huksley.app.system;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * External storage for {@link StoredSession}. Session metadata and every attribute are stored separately,
+ * so attributes are loaded only when used and only changed attributes are written back.
+ */
+public interface SessionStore {
+    /**
+     * Session metadata, timestamps in ms, interval in seconds.
+     */
+    class Meta {
+        public final long created;
+        public final long lastAccessed;
+        public final int maxInactiveInterval;
+
+        public Meta(long created, long lastAccessed, int maxInactiveInterval) {
+            this.created = created;
+            this.lastAccessed = lastAccessed;
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+
+        public boolean isExpired(long now) {
+            return maxInactiveInterval > 0 && lastAccessed + maxInactiveInterval * 1000L < now;
+        }
+    }
+
+    /**
+     * Returns metadata or null if session does not exist or expired.
+     */
+    Meta load(String id);
+
+    byte[] getAttribute(String id, String name);
+
+    Set<String> getAttributeNames(String id);
+
+    /**
+     * Writes metadata (if not null), changed and removed attributes.
+     */
+    void save(String id, Meta meta, Map<String, byte[]> changed, Collection<String> removed);
+
+    void delete(String id);
+}
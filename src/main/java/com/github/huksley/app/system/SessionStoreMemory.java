@@ -0,0 +1,78 @@
+package com.github.huksley.app.system;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory session store, for tests and single node deployments.
+ * Attributes are kept serialized, same as in Redis.
+ */
+public class SessionStoreMemory implements SessionStore {
+    static class Entry {
+        volatile Meta meta;
+        final Map<String, byte[]> attributes = new ConcurrentHashMap<>();
+
+        Entry(Meta meta) {
+            this.meta = meta;
+        }
+    }
+
+    final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    Entry entry(String id) {
+        Entry e = sessions.get(id);
+        if (e != null && e.meta.isExpired(System.currentTimeMillis())) {
+            sessions.remove(id, e);
+            return null;
+        }
+        return e;
+    }
+
+    @Override
+    public Meta load(String id) {
+        Entry e = entry(id);
+        return e != null ? e.meta : null;
+    }
+
+    @Override
+    public byte[] getAttribute(String id, String name) {
+        Entry e = entry(id);
+        return e != null ? e.attributes.get(name) : null;
+    }
+
+    @Override
+    public Set<String> getAttributeNames(String id) {
+        Entry e = entry(id);
+        return e != null ? new HashSet<>(e.attributes.keySet()) : new HashSet<>();
+    }
+
+    @Override
+    public void save(String id, Meta meta, Map<String, byte[]> changed, Collection<String> removed) {
+        Entry e = meta != null ? sessions.computeIfAbsent(id, k -> new Entry(meta)) : sessions.get(id);
+        if (e == null) {
+            // Expired meanwhile
+            return;
+        }
+        e.attributes.putAll(changed);
+        e.attributes.keySet().removeAll(removed);
+        if (meta != null) {
+            e.meta = meta;
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        sessions.remove(id);
+    }
+
+    /**
+     * Removes expired sessions.
+     */
+    public void prune() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(e -> e.meta.isExpired(now));
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.huksley.app.system;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Redis session store. Session is a hash at prefix + id, with metadata in {@link #META}
+ * field and attributes in "a:" + name fields. Redis expires the hash after max inactive interval.
+ */
+public class SessionStoreRedis implements SessionStore {
+    static final byte[] META = "#m".getBytes(StandardCharsets.UTF_8);
+    static final String ATTRIBUTE = "a:";
+
+    private final JedisPool pool;
+    private final String prefix;
+
+    public SessionStoreRedis(JedisPool pool, String prefix) {
+        this.pool = pool;
+        this.prefix = prefix;
+    }
+
+    byte[] key(String id) {
+        return (prefix + id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] field(String name) {
+        return (ATTRIBUTE + name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] encode(Meta meta) {
+        return ByteBuffer.allocate(20).putLong(meta.created).putLong(meta.lastAccessed).putInt(meta.maxInactiveInterval).array();
+    }
+
+    static Meta decode(byte[] b) {
+        ByteBuffer bb = ByteBuffer.wrap(b);
+        return new Meta(bb.getLong(), bb.getLong(), bb.getInt());
+    }
+
+    @Override
+    public Meta load(String id) {
+        try (Jedis j = pool.getResource()) {
+            byte[] b = j.hget(key(id), META);
+            return b != null ? decode(b) : null;
+        }
+    }
+
+    @Override
+    public byte[] getAttribute(String id, String name) {
+        try (Jedis j = pool.getResource()) {
+            return j.hget(key(id), field(name));
+        }
+    }
+
+    @Override
+    public Set<String> getAttributeNames(String id) {
+        Set<String> names = new HashSet<>();
+        try (Jedis j = pool.getResource()) {
+            for (byte[] f: j.hkeys(key(id))) {
+                String s = new String(f, StandardCharsets.UTF_8);
+                if (s.startsWith(ATTRIBUTE)) {
+                    names.add(s.substring(ATTRIBUTE.length()));
+                }
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public void save(String id, Meta meta, Map<String, byte[]> changed, Collection<String> removed) {
+        byte[] key = key(id);
+        try (Jedis j = pool.getResource()) {
+            if (meta == null && !j.exists(key)) {
+                // Expired meanwhile, don`t resurrect partial session
+                return;
+            }
+            Map<byte[], byte[]> m = new HashMap<>();
+            for (Map.Entry<String, byte[]> e: changed.entrySet()) {
+                m.put(field(e.getKey()), e.getValue());
+            }
+            if (meta != null) {
+                m.put(META, encode(meta));
+            }
+            Pipeline p = j.pipelined();
+            if (!m.isEmpty()) {
+                p.hmset(key, m);
+            }
+            if (!removed.isEmpty()) {
+                byte[][] fields = new byte[removed.size()][];
+                int i = 0;
+                for (String name: removed) {
+                    fields[i++] = field(name);
+                }
+                p.hdel(key, fields);
+            }
+            if (meta != null && meta.maxInactiveInterval > 0) {
+                p.expire(key, meta.maxInactiveInterval);
+            }
+            p.sync();
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        try (Jedis j = pool.getResource()) {
+            j.del(key(id));
+        }
+    }
+}
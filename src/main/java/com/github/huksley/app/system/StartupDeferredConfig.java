@@ -0,0 +1,181 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Deferred startup, startup.mode=deferred. Non-critical work is done on background pool
+ * (startup.deferred.threads) after application is ready, so first liveness probe passes sooner:
+ * <ul>
+ * <li>Springfox documentation scanning, which otherwise runs on context refresh</li>
+ * <li>beans listed in startup.deferred, made lazy and created in background</li>
+ * </ul>
+ * Until all of it completes, startup health indicator is OUT_OF_SERVICE, so /management/health (readiness) returns 503,
+ * use /management/info for liveness. Lazy bean still created eagerly if some eager bean depends on it.
+ * Spring creates singletons under single lock, so deferred beans mostly overlap with other work, not with each other.
+ */
+@Configuration
+@ConditionalOnProperty(name = "startup.mode", havingValue = "deferred")
+public class StartupDeferredConfig {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Springfox lifecycle bean scanning all controllers
+     */
+    public static final String SPRINGFOX_BOOTSTRAPPER = "documentationPluginsBootstrapper";
+
+    @Autowired
+    Environment env;
+
+    @Autowired
+    ApplicationContext context;
+
+    @Autowired
+    StartupTimings timings;
+
+    final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    volatile ExecutorService executor;
+
+    volatile Throwable error;
+
+    @Bean
+    public static BeanFactoryPostProcessor startupDeferredBeans(Environment env) {
+        return beanFactory -> {
+            // Don`t let Springfox scan on refresh, started after ready instead
+            ((ConfigurableEnvironment) env).getPropertySources().addFirst(new MapPropertySource("startup.deferred",
+                Collections.singletonMap("springfox.documentation.auto-startup", "false")));
+            for (String name: deferred(env)) {
+                if (beanFactory.containsBeanDefinition(name)) {
+                    beanFactory.getBeanDefinition(name).setLazyInit(true);
+                } else {
+                    LoggerFactory.getLogger(StartupDeferredConfig.class).warn("Deferred bean {} not defined", name);
+                }
+            }
+        };
+    }
+
+    static List<String> deferred(Environment env) {
+        List<String> l = new ArrayList<>();
+        for (String name: env.getProperty("startup.deferred", String[].class, new String[0])) {
+            if (!name.trim().isEmpty()) {
+                l.add(name.trim());
+            }
+        }
+        return l;
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent ev) {
+        if (ev.getApplicationContext() != context) {
+            return;
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        if (context.containsBean(SPRINGFOX_BOOTSTRAPPER)) {
+            tasks.add(task(SPRINGFOX_BOOTSTRAPPER + ".start", () -> {
+                context.getBean(SPRINGFOX_BOOTSTRAPPER, SmartLifecycle.class).start();
+                // Documentation was not scanned yet on refresh
+                context.getBean(SwaggerSpecConfig.class).prerender();
+            }));
+        }
+        for (String name: deferred(env)) {
+            if (context.containsBeanDefinition(name)) {
+                tasks.add(task(name, () -> context.getBean(name)));
+            }
+        }
+
+        int threads = env.getProperty("startup.deferred.threads", Integer.class, 2);
+        AtomicInteger n = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "startup-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long started = System.nanoTime();
+        CompletableFuture<?>[] all = tasks.stream().map(t -> CompletableFuture.runAsync(t, executor)).toArray(CompletableFuture<?>[]::new);
+        CompletableFuture.allOf(all).whenComplete((v, e) -> {
+            executor.shutdown();
+            long ms = (System.nanoTime() - started) / 1000000;
+            if (e != null) {
+                error = e.getCause() != null ? e.getCause() : e;
+                log.warn("Deferred startup failed after {} ms: {}", ms, error.toString());
+                done.completeExceptionally(error);
+            } else {
+                timings.report("Deferred startup done in " + ms + " ms", env.getProperty("startup.report.top", Integer.class, 10));
+                done.complete(null);
+            }
+        });
+    }
+
+    Runnable task(String name, Runnable r) {
+        pending.add(name);
+        return () -> {
+            long started = System.nanoTime();
+            try {
+                r.run();
+            } finally {
+                long t = System.nanoTime() - started;
+                timings.record("deferred:" + name, t, t);
+                pending.remove(name);
+            }
+        };
+    }
+
+    /**
+     * Completes when all deferred work is done
+     */
+    public CompletableFuture<Void> getDone() {
+        return done;
+    }
+
+    /**
+     * Readiness, startup component of /management/health
+     */
+    @Bean
+    public HealthIndicator startupHealthIndicator() {
+        return () -> {
+            if (error != null) {
+                return Health.down().withDetail("error", error.toString()).build();
+            }
+            if (!done.isDone()) {
+                return Health.outOfService().withDetail("pending", new ArrayList<>(pending)).build();
+            }
+            return Health.up().build();
+        };
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.huksley.app.system;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint with startup timing report, /management/startup (admin only).
+ */
+@Component
+@Endpoint(id = "startup")
+public class StartupEndpoint {
+    @Autowired
+    StartupTimings timings;
+
+    @ReadOperation
+    public Map<String, Object> report() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ready", timings.getReady());
+        m.put("beans", timings.size());
+        m.put("slowest", timings.top(50));
+        return m;
+    }
+}
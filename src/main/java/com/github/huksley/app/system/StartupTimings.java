@@ -0,0 +1,188 @@
+package com.github.huksley.app.system;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per bean startup timing, from instantiation to end of initialization, total (including beans
+ * created as its dependencies) and self time. Logged on startup (top startup.report.top, 0 disables)
+ * and available at /management/startup. Has no dependencies, so it is registered before other post processors
+ * and measures nearly every bean.
+ */
+@Component
+public class StartupTimings implements InstantiationAwareBeanPostProcessor, PriorityOrdered, ApplicationListener<ApplicationReadyEvent> {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    public static class Timing {
+        final String name;
+        final String thread;
+        final long total;
+        final long self;
+
+        Timing(String name, String thread, long total, long self) {
+            this.name = name;
+            this.thread = thread;
+            this.total = total;
+            this.self = self;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * Total ms, including dependencies created meanwhile
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Ms spent in this bean only
+         */
+        public long getSelf() {
+            return self;
+        }
+    }
+
+    static class Frame {
+        final String name;
+        final Frame parent;
+        final long started = System.nanoTime();
+        long nested;
+
+        Frame(String name, Frame parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        boolean isWithin(Frame f) {
+            for (Frame p = parent; p != null; p = p.parent) {
+                if (p == f) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Beans being created on this thread, by name, and innermost one
+     */
+    static class Creation {
+        final Map<String, Frame> frames = new HashMap<>();
+        Frame current;
+    }
+
+    /**
+     * Removed when thread has no beans in creation
+     */
+    final ThreadLocal<Creation> creation = new ThreadLocal<>();
+
+    final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    volatile long ready;
+
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+        Creation c = creation.get();
+        if (c == null) {
+            c = new Creation();
+            creation.set(c);
+        }
+        if (!c.frames.containsKey(beanName)) {
+            c.current = new Frame(beanName, c.current);
+            c.frames.put(beanName, c.current);
+        }
+        return null;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        Creation c = creation.get();
+        // Not measured, i.e. FactoryBean product, which is post processed with factory name
+        Frame f = c != null ? c.frames.remove(beanName) : null;
+        if (f == null) {
+            return bean;
+        }
+        long total = System.nanoTime() - f.started;
+        if (f.parent != null) {
+            f.parent.nested += total;
+        }
+        // Dependencies which failed to create never complete
+        c.frames.values().removeIf(o -> o.isWithin(f));
+        c.current = f.parent;
+        if (c.frames.isEmpty()) {
+            creation.remove();
+        }
+        record(beanName, total, total - f.nested);
+        return bean;
+    }
+
+    /**
+     * Records work not bound to bean creation, i.e. deferred initialization steps.
+     */
+    public void record(String name, long totalNanos, long selfNanos) {
+        timings.put(name, new Timing(name, Thread.currentThread().getName(), totalNanos / 1000000, selfNanos / 1000000));
+    }
+
+    /**
+     * Slowest first, by self time
+     */
+    public List<Timing> top(int n) {
+        return timings.values().stream().
+            sorted(Comparator.comparingLong(Timing::getSelf).reversed().thenComparing(Timing::getName)).
+            limit(n).collect(Collectors.toList());
+    }
+
+    public int size() {
+        return timings.size();
+    }
+
+    /**
+     * Ms from JVM start till application ready, 0 until then
+     */
+    public long getReady() {
+        return ready;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        ready = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        report("Ready in " + ready + " ms", event.getApplicationContext().getEnvironment().getProperty("startup.report.top", Integer.class, 10));
+    }
+
+    public void report(String title, int top) {
+        if (top <= 0) {
+            return;
+        }
+        StringBuilder s = new StringBuilder(title).append(", ").append(timings.size()).append(" beans, slowest (self/total ms):");
+        for (Timing t: top(top)) {
+            s.append("\n    ").append(t.self).append("\t").append(t.total).append("\t").append(t.name).append(" [").append(t.thread).append("]");
+        }
+        log.info(s.toString());
+    }
+}
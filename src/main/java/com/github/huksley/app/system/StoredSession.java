@@ -0,0 +1,255 @@
+package com.github.huksley.app.system;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+
+/**
+ * {@link HttpSession} backed by {@link SessionStore}. Attributes are fetched on first access,
+ * changes are tracked and written by {@link #commit()} at the end of request.
+ */
+@SuppressWarnings("deprecation")
+public class StoredSession implements HttpSession {
+    private static final Object ABSENT = new Object();
+
+    private final SessionStore store;
+    private final ServletContext context;
+    private String id;
+    private String previousId;
+    private final long created;
+    private final long lastAccessed;
+    private final long accessed;
+    private long written;
+    private int maxInactiveInterval;
+    private final boolean isNew;
+    private boolean invalid;
+    private boolean metaChanged;
+    private Set<String> names;
+    private final Map<String, Object> cache = new HashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+    private final Set<String> removed = new HashSet<>();
+
+    /**
+     * New session
+     */
+    public StoredSession(SessionStore store, ServletContext context, String id, int maxInactiveInterval) {
+        this.store = store;
+        this.context = context;
+        this.id = id;
+        this.created = System.currentTimeMillis();
+        this.lastAccessed = created;
+        this.accessed = created;
+        this.written = 0;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.isNew = true;
+        this.metaChanged = true;
+        this.names = new HashSet<>();
+    }
+
+    /**
+     * Existing session
+     */
+    public StoredSession(SessionStore store, ServletContext context, String id, SessionStore.Meta meta) {
+        this.store = store;
+        this.context = context;
+        this.id = id;
+        this.created = meta.created;
+        this.lastAccessed = meta.lastAccessed;
+        this.accessed = System.currentTimeMillis();
+        this.written = meta.lastAccessed;
+        this.maxInactiveInterval = meta.maxInactiveInterval;
+        this.isNew = false;
+    }
+
+    void checkValid() {
+        if (invalid) {
+            throw new IllegalStateException("Session " + id + " is invalidated");
+        }
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getCreationTime() {
+        checkValid();
+        return created;
+    }
+
+    @Override
+    public long getLastAccessedTime() {
+        checkValid();
+        return lastAccessed;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return context;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval) {
+        maxInactiveInterval = interval;
+        metaChanged = true;
+    }
+
+    @Override
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    @Override
+    public javax.servlet.http.HttpSessionContext getSessionContext() {
+        return null;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        checkValid();
+        Object v = cache.get(name);
+        if (v == null && !cache.containsKey(name)) {
+            byte[] b = isNew || removed.contains(name) ? null : store.getAttribute(id, name);
+            v = b != null ? SessionSerializer.deserialize(b) : ABSENT;
+            cache.put(name, v);
+        }
+        return v != ABSENT ? v : null;
+    }
+
+    @Override
+    public Object getValue(String name) {
+        return getAttribute(name);
+    }
+
+    Set<String> names() {
+        if (names == null) {
+            names = store.getAttributeNames(id);
+            names.removeAll(removed);
+            names.addAll(dirty);
+        }
+        return names;
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        checkValid();
+        return Collections.enumeration(new HashSet<>(names()));
+    }
+
+    @Override
+    public String[] getValueNames() {
+        checkValid();
+        return names().toArray(new String[0]);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        checkValid();
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        cache.put(name, value);
+        dirty.add(name);
+        removed.remove(name);
+        if (names != null) {
+            names.add(name);
+        }
+    }
+
+    @Override
+    public void putValue(String name, Object value) {
+        setAttribute(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        checkValid();
+        cache.put(name, ABSENT);
+        dirty.remove(name);
+        removed.add(name);
+        if (names != null) {
+            names.remove(name);
+        }
+    }
+
+    @Override
+    public void removeValue(String name) {
+        removeAttribute(name);
+    }
+
+    @Override
+    public void invalidate() {
+        checkValid();
+        invalid = true;
+    }
+
+    @Override
+    public boolean isNew() {
+        checkValid();
+        return isNew;
+    }
+
+    public boolean isInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Moves session to new id, all attributes are loaded so they can be written under new id.
+     */
+    void changeId(String newId) {
+        checkValid();
+        if (!isNew) {
+            for (String name: names()) {
+                if (getAttribute(name) != null) {
+                    dirty.add(name);
+                }
+            }
+            if (previousId == null) {
+                previousId = id;
+            }
+        }
+        removed.clear();
+        metaChanged = true;
+        id = newId;
+    }
+
+    /**
+     * Writes changes to store, can be called several times per request.
+     *
+     * @param touchInterval minimum interval (ms) between writes of last access time only
+     */
+    void commit(long touchInterval) {
+        if (invalid) {
+            store.delete(id);
+        } else {
+            boolean touch = metaChanged || accessed - written >= touchInterval;
+            if (!dirty.isEmpty() || !removed.isEmpty() || touch) {
+                Map<String, byte[]> changed = new HashMap<>();
+                for (String name: dirty) {
+                    changed.put(name, SessionSerializer.serialize(cache.get(name)));
+                }
+                SessionStore.Meta meta = touch || !dirty.isEmpty() ? new SessionStore.Meta(created, accessed, maxInactiveInterval) : null;
+                store.save(id, meta, changed, removed);
+                if (meta != null) {
+                    written = accessed;
+                }
+                dirty.clear();
+                removed.clear();
+                metaChanged = false;
+            }
+        }
+
+        if (previousId != null) {
+            store.delete(previousId);
+            previousId = null;
+        }
+    }
+}
@@ -1,23 +1,10 @@
 package com.github.huksley.app.system;
 
-import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
-import javax.servlet.Filter;
-import javax.servlet.FilterChain;
-import javax.servlet.FilterConfig;
-import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
-import javax.servlet.ServletRequest;
-import javax.servlet.ServletResponse;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpServletResponseWrapper;
-
-import org.apache.catalina.ssi.ByteArrayServletOutputStream;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -38,10 +25,12 @@ import springfox.documentation.swagger.web.SecurityConfiguration;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 /**
- * Configures and properly proxies Swagger UI and Swagger JSON.
+ * Configures Swagger UI and Swagger JSON generation, proxied by {@link SwaggerSpecConfig}.
+ * Only in swagger.mode=runtime (default), in static mode spec generated during build is served instead.
  */
 @Configuration
 @EnableSwagger2
+@ConditionalOnProperty(name = "swagger.mode", havingValue = "runtime", matchIfMissing = true)
 public class SwaggerConfig {
     @Autowired
     Environment env;
@@ -88,57 +77,6 @@ public class SwaggerConfig {
           .host("localhost");
     }
     
-    @Bean
-    public FilterRegistrationBean createApiFilter() {
-        FilterRegistrationBean b = new FilterRegistrationBean(new Filter() {
-            @Override
-            public void init(FilterConfig filterConfig) throws ServletException {
-            }
-
-            @Override
-            public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-                HttpServletRequest req = (HttpServletRequest) request;
-                HttpServletResponse res = (HttpServletResponse) response;
-
-                String json = null;
-                try (ByteArrayServletOutputStream s = new ByteArrayServletOutputStream()) {
-                    HttpServletResponseWrapper w = new HttpServletResponseWrapper(res) {
-                        public ServletOutputStream getOutputStream() throws IOException {
-                            return s;
-                        }
-                    };
-                    chain.doFilter(request, w);
-                    json = new String(s.toByteArray(), "UTF-8");
-                }
-
-                // Change Swagger JSON - remove host
-                json = json.replace(",\"host\":\"localhost\",", ",");
-                
-                String behindProxy = req.getHeader("X-Real-IP");
-                if (behindProxy == null) {
-                    behindProxy = req.getHeader("X-Forwarded-For");
-                }
-                
-                String path = env.getProperty("server.contextPath", "/");
-                String rpath = System.getenv("REAL_CONTEXT_PATH");
-                if (rpath != null) {
-                    path = rpath;
-                }
-                if (behindProxy != null && path != null) {
-                    json = json.replace(",\"basePath\":\"/\",", ",\"basePath\":\"" + path + "\",");
-                }
-                res.getOutputStream().write(json.getBytes("UTF-8"));
-            }
-
-            @Override
-            public void destroy() {
-            }
-        });
-		b.setName("SwaggerJSONFilter");
-        b.setUrlPatterns(Collections.singleton("/v2/api-docs"));
-        return b;
-    }
-    
     private ApiInfo apiInfo() {
         ApiInfo apiInfo = new ApiInfo(
             env.getProperty("swagger.title", "API"),
@@ -0,0 +1,251 @@
+package com.github.huksley.app.system;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.catalina.ssi.ByteArrayServletOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StreamUtils;
+
+import io.swagger.models.Swagger;
+import springfox.documentation.service.Documentation;
+import springfox.documentation.spring.web.DocumentationCache;
+import springfox.documentation.spring.web.json.JsonSerializer;
+import springfox.documentation.spring.web.plugins.Docket;
+import springfox.documentation.swagger2.mappers.ServiceModelToSwagger2Mapper;
+
+/**
+ * Serves Swagger JSON with host removed and basePath adjusted when behind proxy.
+ * In swagger.mode=runtime spec is produced by Springfox ({@link SwaggerConfig}),
+ * in swagger.mode=static it is read from classpath, generated during build (startup fails without it).
+ * Rewritten JSON is prepared on context refresh and cached (with gzip variant and ETag).
+ */
+@Configuration
+public class SwaggerSpecConfig {
+    public static final String STATIC_SPEC = "/openapi/openapi.json";
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    /**
+     * Rewritten spec per group and basePath variant, ready to be served. Spec changes only on redeploy.
+     */
+    final Map<String, SecurityTemplates.Template> specs = new ConcurrentHashMap<>();
+
+    @Autowired
+    SecurityTemplates templates;
+
+    @Autowired
+    ObjectProvider<DocumentationCache> documentation;
+
+    @Autowired
+    ObjectProvider<ServiceModelToSwagger2Mapper> mapper;
+
+    @Autowired
+    ObjectProvider<JsonSerializer> json;
+
+    /**
+     * Springfox has scanned controllers by now (lifecycle beans start before this event), so render known variants ahead of requests.
+     */
+    @EventListener
+    public void onRefresh(ContextRefreshedEvent ev) {
+        specs.clear();
+        prerender();
+    }
+
+    /**
+     * Renders spec of every documentation group, direct and behind proxy, same as Springfox controller does.
+     * In static mode renders build time spec instead.
+     * Nothing to render until Springfox has scanned controllers, then first request renders it.
+     */
+    public void prerender() {
+        if (isStatic()) {
+            for (String basePath: new String[] { basePath(false), basePath(true) }) {
+                specs.put(key(null, basePath), SecurityTemplates.Template.of("application/json;charset=UTF-8", rewrite(staticSpec, basePath)));
+            }
+            return;
+        }
+        DocumentationCache cache = documentation.getIfAvailable();
+        if (cache == null || mapper.getIfAvailable() == null || json.getIfAvailable() == null) {
+            return;
+        }
+        for (Map.Entry<String, Documentation> e: cache.all().entrySet()) {
+            Swagger swagger = mapper.getObject().mapDocumentation(e.getValue());
+            if (swagger.getBasePath() == null || swagger.getBasePath().isEmpty()) {
+                swagger.basePath("/");
+            }
+            String raw = json.getObject().toJson(swagger).value();
+            // Default group is requested without group parameter
+            String group = Docket.DEFAULT_GROUP_NAME.equals(e.getKey()) ? null : e.getKey();
+            for (String basePath: new String[] { basePath(false), basePath(true) }) {
+                specs.put(key(group, basePath), SecurityTemplates.Template.of("application/json;charset=UTF-8", rewrite(raw, basePath)));
+            }
+        }
+        log.info("Prepared {} Swagger spec variants", specs.size());
+    }
+
+    /**
+     * Base path to put into spec, null when not behind proxy (spec is not changed)
+     */
+    String basePath(boolean behindProxy) {
+        String path = env.getProperty("server.contextPath", "/");
+        String rpath = System.getenv("REAL_CONTEXT_PATH");
+        if (rpath != null) {
+            path = rpath;
+        }
+        return behindProxy && path != null ? path : null;
+    }
+
+    public static String key(String group, String basePath) {
+        return group + "\n" + basePath;
+    }
+
+    public Map<String, SecurityTemplates.Template> getSpecs() {
+        return specs;
+    }
+
+    boolean isStatic() {
+        return "static".equals(env.getProperty("swagger.mode"));
+    }
+
+    /**
+     * Spec generated during build by OpenApiGenerator (process-test-classes phase), in static mode only.
+     */
+    volatile String staticSpec;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (isStatic()) {
+            try (InputStream is = getClass().getResourceAsStream(STATIC_SPEC)) {
+                if (is == null) {
+                    throw new IllegalStateException("swagger.mode=static, but " + STATIC_SPEC + " was not generated during build (built with -DskipTests?)");
+                }
+                staticSpec = new String(StreamUtils.copyToByteArray(is), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    static String rewrite(String json, String basePath) {
+        // Change Swagger JSON - remove host
+        json = json.replace(",\"host\":\"localhost\",", ",");
+        if (basePath != null) {
+            json = json.replace(",\"basePath\":\"/\",", ",\"basePath\":\"" + basePath + "\",");
+        }
+        return json;
+    }
+
+    @Bean
+    public FilterRegistrationBean createApiFilter() {
+        FilterRegistrationBean b = new FilterRegistrationBean(new Filter() {
+            @Override
+            public void init(FilterConfig filterConfig) throws ServletException {
+            }
+
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+                HttpServletRequest req = (HttpServletRequest) request;
+                HttpServletResponse res = (HttpServletResponse) response;
+
+                String behindProxy = req.getHeader("X-Real-IP");
+                if (behindProxy == null) {
+                    behindProxy = req.getHeader("X-Forwarded-For");
+                }
+                
+                String basePath = basePath(behindProxy != null);
+                String group = req.getParameter("group");
+                if (isStatic()) {
+                    // Build time spec has default group only, don`t cache copy per arbitrary parameter value
+                    if (group != null && !Docket.DEFAULT_GROUP_NAME.equals(group)) {
+                        res.sendError(HttpServletResponse.SC_NOT_FOUND, "No such group");
+                        return;
+                    }
+                    group = null;
+                }
+                String key = key(group, basePath);
+
+                SecurityTemplates.Template spec = specs.get(key);
+                if (spec == null && isStatic()) {
+                    spec = SecurityTemplates.Template.of("application/json;charset=UTF-8", rewrite(staticSpec, basePath));
+                    specs.put(key, spec);
+                } else
+                if (spec == null) {
+                    String json = null;
+                    try (ByteArrayServletOutputStream s = new ByteArrayServletOutputStream()) {
+                        HttpServletResponseWrapper w = new HttpServletResponseWrapper(res) {
+                            public ServletOutputStream getOutputStream() throws IOException {
+                                return s;
+                            }
+
+                            // Don`t commit response, it is written from cache below
+                            public void flushBuffer() {
+                            }
+
+                            public void setContentLength(int len) {
+                            }
+
+                            public void setContentLengthLong(long len) {
+                            }
+                        };
+                        // Cached for everyone, so ask Springfox for JSON whatever first caller accepts
+                        HttpServletRequestWrapper r = new HttpServletRequestWrapper(req) {
+                            public String getHeader(String name) {
+                                return "Accept".equalsIgnoreCase(name) ? "application/json" : super.getHeader(name);
+                            }
+
+                            public Enumeration<String> getHeaders(String name) {
+                                return "Accept".equalsIgnoreCase(name) ? Collections.enumeration(Collections.singleton("application/json")) : super.getHeaders(name);
+                            }
+                        };
+                        chain.doFilter(r, w);
+                        json = new String(s.toByteArray(), "UTF-8");
+                    }
+
+                    json = rewrite(json, basePath);
+                    if (res.getStatus() != HttpServletResponse.SC_OK) {
+                        res.getOutputStream().write(json.getBytes("UTF-8"));
+                        return;
+                    }
+                    spec = SecurityTemplates.Template.of("application/json;charset=UTF-8", json);
+                    specs.put(key, spec);
+                }
+                templates.serve(spec, req, res);
+            }
+
+            @Override
+            public void destroy() {
+            }
+        });
+		b.setName("SwaggerJSONFilter");
+        b.setUrlPatterns(Collections.singleton(env.getProperty("springfox.documentation.swagger.v2.path", "/v2/api-docs")));
+        return b;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.huksley.app.system;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Swagger UI resource endpoints normally provided by Springfox, for swagger.mode=static,
+ * so UI loads spec generated during build (served by {@link SwaggerSpecConfig}) without Springfox scanning.
+ */
+@RestController
+@ConditionalOnProperty(name = "swagger.mode", havingValue = "static")
+public class SwaggerStaticController {
+    @Autowired
+    Environment env;
+
+    @GetMapping("/swagger-resources")
+    public List<Map<String, String>> resources() {
+        String path = env.getProperty("springfox.documentation.swagger.v2.path", "/v2/api-docs");
+        Map<String, String> r = new LinkedHashMap<>();
+        r.put("name", "default");
+        r.put("url", path);
+        r.put("swaggerVersion", "2.0");
+        r.put("location", path);
+        return Collections.singletonList(r);
+    }
+
+    @GetMapping({ "/swagger-resources/configuration/ui", "/swagger-resources/configuration/security" })
+    public Map<String, Object> configuration() {
+        return Collections.emptyMap();
+    }
+}
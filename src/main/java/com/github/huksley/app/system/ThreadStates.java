@@ -0,0 +1,97 @@
+package com.github.huksley.app.system;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Reusable per thread state (digests, buffers, deflaters). Platform threads keep it in {@link ThreadLocal},
+ * virtual threads are created per task, so they borrow it from bounded shared pool instead.
+ * Always pair {@link #acquire()} with {@link #release(Object)}. State which does not fit into pool is passed
+ * to discard callback, i.e. to free native resources.
+ */
+public final class ThreadStates<T> {
+    /**
+     * Thread.isVirtual(), null before JDK 21
+     */
+    static final MethodHandle IS_VIRTUAL = isVirtualMethod();
+
+    final Supplier<T> factory;
+
+    final Consumer<T> discard;
+
+    final BooleanSupplier virtual;
+
+    final ThreadLocal<T> local;
+
+    final Queue<T> pool = new ConcurrentLinkedQueue<>();
+
+    final AtomicInteger pooled = new AtomicInteger();
+
+    final int max;
+
+    public ThreadStates(Supplier<T> factory) {
+        this(factory, t -> {});
+    }
+
+    public ThreadStates(Supplier<T> factory, Consumer<T> discard) {
+        this(factory, discard, Runtime.getRuntime().availableProcessors() * 4, ThreadStates::isVirtual);
+    }
+
+    ThreadStates(Supplier<T> factory, Consumer<T> discard, int max, BooleanSupplier virtual) {
+        this.factory = factory;
+        this.discard = discard;
+        this.local = ThreadLocal.withInitial(factory);
+        this.max = max;
+        this.virtual = virtual;
+    }
+
+    public T acquire() {
+        if (!virtual.getAsBoolean()) {
+            return local.get();
+        }
+        T t = pool.poll();
+        if (t != null) {
+            pooled.decrementAndGet();
+            return t;
+        }
+        return factory.get();
+    }
+
+    public void release(T t) {
+        if (!virtual.getAsBoolean()) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= max) {
+            pool.offer(t);
+        } else {
+            pooled.decrementAndGet();
+            discard.accept(t);
+        }
+    }
+
+    public static boolean isVirtual() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    static MethodHandle isVirtualMethod() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
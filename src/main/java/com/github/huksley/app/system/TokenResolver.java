@@ -0,0 +1,187 @@
+package com.github.huksley.app.system;
+
+import java.util.Enumeration;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Resolves auth token from X-Auth-Token header or AuthToken cookie once per request.
+ * Result is stored as request attribute so every filter and controller reads the same value.
+ *
+ * <pre>{@code
+ * TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+ * if (tok != null && !tok.isExpired()) {
+ *     ...
+ * }
+ * }</pre>
+ */
+public class TokenResolver {
+    public static final String ATTRIBUTE = TokenResolver.class.getName() + ".TOKEN";
+
+    /**
+     * Marks request without token, so we don`t look for it twice.
+     */
+    private static final Object NONE = new Object();
+
+    public enum Source {
+        HEADER, COOKIE
+    }
+
+    /**
+     * Token as passed by client, with source and expiration from token:exp suffix.
+     */
+    public static class ResolvedToken {
+        private final String token;
+        private final Source source;
+        private final long expiration;
+
+        public ResolvedToken(String token, Source source) {
+            this.token = token;
+            this.source = source;
+            this.expiration = expiration(token);
+        }
+
+        /**
+         * Token including :exp suffix
+         */
+        public String getToken() {
+            return token;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        public boolean isCookie() {
+            return source == Source.COOKIE;
+        }
+
+        /**
+         * Expiration timestamp (ms) from token suffix or 0 if unknown.
+         */
+        public long getExpiration() {
+            return expiration;
+        }
+
+        public boolean isExpired() {
+            return expiration != 0 && expiration < System.currentTimeMillis();
+        }
+
+        @Override
+        public String toString() {
+            return source + ":" + token;
+        }
+    }
+
+    /**
+     * Returns token for this request or null if there is none.
+     */
+    public static ResolvedToken resolve(HttpServletRequest request) {
+        Object o = request.getAttribute(ATTRIBUTE);
+        if (o == null) {
+            o = find(request);
+            request.setAttribute(ATTRIBUTE, o != null ? o : NONE);
+        }
+        return o instanceof ResolvedToken ? (ResolvedToken) o : null;
+    }
+
+    protected static ResolvedToken find(HttpServletRequest request) {
+        String tok = request.getHeader(SecurityConfigurer.HEADER_AUTH);
+        if (tok != null) {
+            return new ResolvedToken(tok, Source.HEADER);
+        }
+
+        tok = cookie(request, SecurityConfigurer.COOKIE_AUTH);
+        if (tok != null) {
+            return new ResolvedToken(tok, Source.COOKIE);
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds cookie value in request without parsing all cookies.
+     */
+    public static String cookie(HttpServletRequest request, String name) {
+        Enumeration<String> en = request.getHeaders("Cookie");
+        if (en != null && en.hasMoreElements()) {
+            while (en.hasMoreElements()) {
+                String v = cookie(en.nextElement(), name);
+                if (v != null) {
+                    return v;
+                }
+            }
+        } else {
+            // No raw header, i.e. cookies set programmatically
+            Cookie[] ckl = request.getCookies();
+            if (ckl != null) {
+                for (Cookie ck: ckl) {
+                    if (ck.getName().equals(name)) {
+                        return ck.getValue();
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds cookie value in Cookie header. Only the value of matched cookie is allocated.
+     */
+    public static String cookie(String header, String name) {
+        int len = header.length();
+        int nlen = name.length();
+        int i = 0;
+        while (i < len) {
+            // Skip separators
+            char c = header.charAt(i);
+            if (c == ' ' || c == ';' || c == ',' || c == '\t') {
+                i++;
+                continue;
+            }
+
+            int end = header.indexOf(';', i);
+            if (end < 0) {
+                end = len;
+            }
+
+            if (end - i > nlen && header.charAt(i + nlen) == '=' && header.regionMatches(i, name, 0, nlen)) {
+                int start = i + nlen + 1;
+                int stop = end;
+                while (stop > start && header.charAt(stop - 1) == ' ') {
+                    stop--;
+                }
+                if (stop - start >= 2 && header.charAt(start) == '"' && header.charAt(stop - 1) == '"') {
+                    start++;
+                    stop--;
+                }
+                return header.substring(start, stop);
+            }
+
+            i = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Parses expiration from token:exp suffix without allocating.
+     */
+    protected static long expiration(String token) {
+        int i = token.lastIndexOf(':');
+        if (i <= 0 || i == token.length() - 1) {
+            return 0;
+        }
+        long exp = 0;
+        for (int j = i + 1; j < token.length(); j++) {
+            char c = token.charAt(j);
+            int d = c - '0';
+            if (d < 0 || d > 9 || exp > (Long.MAX_VALUE - d) / 10) {
+                return 0;
+            }
+            exp = exp * 10 + d;
+        }
+        return exp;
+    }
+}
@@ -0,0 +1,359 @@
+package com.github.huksley.app.system;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Read-only user directory in memory-mapped index file. Lookups are O(1) using open addressing
+ * hash table in the file itself, user records are never copied to heap.
+ *
+ * <p>Source is text file with lines {@code username:bcrypt-hash:ROLE1,ROLE2}, index file layout is
+ *
+ * <pre>
+ * header  magic, version, count, slots, slots offset, data offset, build time, role names
+ * slots   (int name hash, int record offset) * slots, offset 0 is empty slot
+ * data    (short name length, name, short hash length, hash, long roles bitmap) * count
+ * </pre>
+ *
+ * To build index from command line:
+ *
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=com.github.huksley.app.system.UserDirectory -Dexec.args="users.txt users.idx"
+ * </pre>
+ */
+public class UserDirectory {
+    static final int MAGIC = 0x55444952;
+    static final int VERSION = 1;
+    static final int SLOT = 8;
+    static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final ByteBuffer buf;
+    private final int count;
+    private final int mask;
+    private final int slotsOffset;
+    private final long built;
+    private final String[] roles;
+    private final AuthoritySet[] roleSets;
+
+    /**
+     * User record.
+     */
+    public static class Entry {
+        private final String name;
+        private final String hash;
+        private final AuthoritySet roles;
+
+        Entry(String name, String hash, AuthoritySet roles) {
+            this.name = name;
+            this.hash = hash;
+            this.roles = roles;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public AuthoritySet getRoles() {
+            return roles;
+        }
+    }
+
+    UserDirectory(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a user directory index");
+        }
+        this.count = buf.getInt(8);
+        this.mask = buf.getInt(12) - 1;
+        this.slotsOffset = buf.getInt(16);
+        this.built = buf.getLong(24);
+        ByteBuffer b = buf.duplicate();
+        b.position(32);
+        int n = b.getShort();
+        roles = new String[n];
+        roleSets = new AuthoritySet[n];
+        for (int i = 0; i < n; i++) {
+            roles[i] = readString(b);
+            roleSets[i] = AuthoritySet.of(roles[i]);
+        }
+    }
+
+    /**
+     * Maps index file, file can be replaced afterwards without affecting this instance.
+     */
+    public static UserDirectory open(Path index) throws IOException {
+        try (FileChannel ch = FileChannel.open(index, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new UserDirectory(buf);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getBuilt() {
+        return built;
+    }
+
+    /**
+     * Returns user or null if there is no such user.
+     */
+    public Entry lookup(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int h = HASH.hashBytes(key).asInt();
+        for (int i = h & mask;; i = (i + 1) & mask) {
+            int slot = slotsOffset + i * SLOT;
+            int offset = buf.getInt(slot + 4);
+            if (offset == 0) {
+                return null;
+            }
+            if (buf.getInt(slot) == h && nameEquals(offset, key)) {
+                return read(name, offset + 2 + key.length);
+            }
+        }
+    }
+
+    boolean nameEquals(int offset, byte[] key) {
+        if (buf.getShort(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buf.get(offset + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Entry read(String name, int offset) {
+        int len = buf.getShort(offset);
+        byte[] hash = new byte[len];
+        for (int i = 0; i < len; i++) {
+            hash[i] = buf.get(offset + 2 + i);
+        }
+        long bits = buf.getLong(offset + 2 + len);
+        AuthoritySet set;
+        if (Long.bitCount(bits) == 1) {
+            set = roleSets[Long.numberOfTrailingZeros(bits)];
+        } else {
+            AuthoritySet.Builder b = new AuthoritySet.Builder();
+            for (int i = 0; i < roles.length; i++) {
+                if ((bits & (1L << i)) != 0) {
+                    b.add(roles[i]);
+                }
+            }
+            set = b.build();
+        }
+        return new Entry(name, new String(hash, StandardCharsets.US_ASCII), set);
+    }
+
+    static String readString(ByteBuffer b) {
+        byte[] s = new byte[b.getShort()];
+        b.get(s);
+        return new String(s, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream os, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too long: " + s.substring(0, 32) + "...");
+        }
+        os.writeShort(b.length);
+        os.write(b);
+    }
+
+    /**
+     * Parses source line into name, hash, roles or returns null for empty lines and comments.
+     */
+    static String[] parse(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        String[] l = line.split(":", 3);
+        if (l.length < 2 || l[0].isEmpty()) {
+            throw new IllegalArgumentException("Invalid line, expected username:hash:roles");
+        }
+        return new String[] { l[0], l[1], l.length > 2 ? l[2] : "USER" };
+    }
+
+    /**
+     * Builds index from source in temporary file and atomically replaces target.
+     * Users are streamed from source twice, heap usage is 8 bytes per user.
+     *
+     * @return number of users
+     */
+    public static int build(Path source, Path target) throws IOException {
+        // Pass 1: count users, collect role table
+        Map<String, Integer> roles = new LinkedHashMap<>();
+        int count = 0;
+        try (BufferedReader r = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            int n = 0;
+            while ((line = r.readLine()) != null) {
+                n++;
+                String[] l;
+                try {
+                    l = parse(line);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(source + ":" + n + ": " + e.getMessage());
+                }
+                if (l != null) {
+                    count++;
+                    for (String role: roles(l[2])) {
+                        if (!roles.containsKey(role)) {
+                            if (roles.size() == 64) {
+                                throw new IllegalArgumentException("Too many distinct roles, max 64");
+                            }
+                            roles.put(role, roles.size());
+                        }
+                    }
+                }
+            }
+        }
+
+        int slots = Integer.highestOneBit(Math.max(count * 2, 16) - 1) << 1;
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        int[] hashes = new int[count];
+        int[] offsets = new int[count];
+        int slotsOffset;
+        int dataOffset;
+
+        // Pass 2: header, empty slots, data
+        try (OutputStream fos = Files.newOutputStream(tmp); DataOutputStream os = new DataOutputStream(new BufferedOutputStream(fos, 65536))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(count);
+            os.writeInt(slots);
+            os.writeInt(0);
+            os.writeInt(0);
+            os.writeLong(System.currentTimeMillis());
+            os.writeShort(roles.size());
+            for (String role: roles.keySet()) {
+                writeString(os, role);
+            }
+            slotsOffset = os.size();
+            if ((long) slotsOffset + (long) slots * SLOT > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many users: " + count);
+            }
+            byte[] zero = new byte[SLOT * 1024];
+            for (long left = (long) slots * SLOT; left > 0; left -= zero.length) {
+                os.write(zero, 0, (int) Math.min(left, zero.length));
+            }
+            dataOffset = os.size();
+
+            int i = 0;
+            try (BufferedReader r = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    String[] l = parse(line);
+                    if (l == null) {
+                        continue;
+                    }
+                    byte[] name = l[0].getBytes(StandardCharsets.UTF_8);
+                    hashes[i] = HASH.hashBytes(name).asInt();
+                    offsets[i] = os.size();
+                    writeString(os, l[0]);
+                    writeString(os, l[1]);
+                    long bits = 0;
+                    for (String role: roles(l[2])) {
+                        bits |= 1L << roles.get(role);
+                    }
+                    os.writeLong(bits);
+                    if (os.size() < 0) {
+                        throw new IllegalArgumentException("Index too large, max 2 GB");
+                    }
+                    i++;
+                }
+            }
+        }
+
+        // Fill slots, later duplicates replace earlier ones
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            buf.putInt(16, slotsOffset);
+            buf.putInt(20, dataOffset);
+            int mask = slots - 1;
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                int h = hashes[i];
+                for (int s = h & mask;; s = (s + 1) & mask) {
+                    int slot = slotsOffset + s * SLOT;
+                    int offset = buf.getInt(slot + 4);
+                    if (offset == 0) {
+                        unique++;
+                    } else if (buf.getInt(slot) != h || !sameName(buf, offset, offsets[i])) {
+                        continue;
+                    }
+                    buf.putInt(slot, h);
+                    buf.putInt(slot + 4, offsets[i]);
+                    break;
+                }
+            }
+            buf.putInt(8, unique);
+            buf.force();
+            count = unique;
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    static boolean sameName(ByteBuffer buf, int a, int b) {
+        int len = buf.getShort(a);
+        if (buf.getShort(b) != len) {
+            return false;
+        }
+        for (int i = 2; i < len + 2; i++) {
+            if (buf.get(a + i) != buf.get(b + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static List<String> roles(String s) {
+        List<String> l = new ArrayList<>();
+        for (String r: s.split("\\,")) {
+            r = r.trim();
+            if (!r.isEmpty()) {
+                l.add(r.startsWith("ROLE_") ? r : "ROLE_" + r);
+            }
+        }
+        return l;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: UserDirectory SOURCE INDEX");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        int n = build(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Indexed " + n + " users in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
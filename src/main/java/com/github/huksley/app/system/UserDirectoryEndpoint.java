@@ -0,0 +1,40 @@
+package com.github.huksley.app.system;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management endpoint to inspect and rebuild user directory index, /management/userdirectory (admin only).
+ */
+@Component
+@Endpoint(id = "userdirectory")
+@ConditionalOnProperty(name = "security.auth.type", havingValue = "directory")
+public class UserDirectoryEndpoint {
+    @Autowired
+    SecurityAuthenticatorDirectory auth;
+
+    @ReadOperation
+    public Map<String, Object> info() {
+        UserDirectory d = auth.getDirectory();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("source", auth.source.toString());
+        m.put("index", auth.index.toString());
+        m.put("users", d.size());
+        m.put("built", d.getBuilt());
+        return m;
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() throws IOException {
+        auth.rebuild();
+        return info();
+    }
+}
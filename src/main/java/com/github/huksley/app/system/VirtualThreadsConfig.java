@@ -0,0 +1,80 @@
+package com.github.huksley.app.system;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+
+/**
+ * Virtual threads mode, server.threads=virtual, requires JDK 21+ at runtime (build stays on Java 8).
+ * Tomcat request processing and @Async tasks run on virtual thread per task instead of fixed pools,
+ * so blocking calls don`t cap concurrency; server.tomcat.max-connections limits it instead.
+ * @Async tasks get caller MDC and security context via {@link MDC#wrap(Runnable)}.
+ * Tomcat 8.5 processes request holding socket monitor, which pins virtual thread to carrier before JDK 24 (JEP 491),
+ * so on older JDKs Tomcat keeps platform threads unless server.threads.force=true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "server.threads", havingValue = "virtual")
+public class VirtualThreadsConfig implements AsyncConfigurer {
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    Environment env;
+
+    final ExecutorService executor = create();
+
+    static ExecutorService create() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("server.threads=virtual requires JDK 21+, running on " + System.getProperty("java.version"));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can`t create virtual thread executor: " + e, e);
+        }
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadsCustomizer() {
+        int jdk = jdkVersion();
+        if (jdk < 24 && !env.getProperty("server.threads.force", Boolean.class, false)) {
+            log.warn("Virtual threads would be pinned by Tomcat on JDK {}, keeping platform threads for requests", jdk);
+            return factory -> {};
+        }
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            ProtocolHandler handler = connector.getProtocolHandler();
+            if (handler instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) handler).setExecutor(executor);
+                log.info("Tomcat {} uses virtual threads", connector);
+            }
+        });
+    }
+
+    static int jdkVersion() {
+        String v = System.getProperty("java.specification.version");
+        return v.startsWith("1.") ? Integer.parseInt(v.substring(2)) : Integer.parseInt(v);
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return task -> executor.execute(MDC.wrap(task));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+}
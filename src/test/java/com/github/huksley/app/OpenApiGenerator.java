@@ -0,0 +1,52 @@
+package com.github.huksley.app;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Generates Swagger spec during build (surefire execution in process-test-classes phase, see pom.xml) for swagger.mode=static.
+ * Not matched by default test includes, output goes to openapi.output system property. Skipped with -DskipTests.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+    "swagger.mode = runtime",
+    "jwt.password = openapi-generator",
+    "JWT_PASSWORD = openapi-generator"
+})
+public class OpenApiGenerator {
+    private final Logger log = LoggerFactory.getLogger(getClass().getName());
+
+    @Value("${local.server.port}")
+    int port;
+
+    @Value("${springfox.documentation.swagger.v2.path:/v2/api-docs}")
+    String path;
+
+    @Test
+    public void generate() throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        Assert.assertEquals(200, conn.getResponseCode());
+        byte[] json = StreamUtils.copyToByteArray(conn.getInputStream());
+        File out = new File(System.getProperty("openapi.output", "target/classes/openapi/openapi.json"));
+        out.getParentFile().mkdirs();
+        Files.write(out.toPath(), json);
+        log.info("Generated {} ({} bytes)", out, json.length);
+    }
+}
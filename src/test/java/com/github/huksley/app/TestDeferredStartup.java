@@ -0,0 +1,86 @@
+package com.github.huksley.app;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Scope;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.github.huksley.app.system.StartupDeferredConfig;
+import com.github.huksley.app.system.StartupTimings;
+
+/**
+ * Springfox scanning and lazy beans done in background in startup.mode=deferred.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+    "startup.mode = deferred",
+    "startup.deferred = jedisPool, deferredBlocker",
+    "jwt.password = test-secret",
+    "JWT_PASSWORD = test-secret"
+})
+@Import(TestDeferredStartup.Blocker.class)
+public class TestDeferredStartup {
+    static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    /**
+     * Deferred bean which completes only when test lets it. Prototype, since singleton creation holds
+     * singleton lock and would block test thread as well. Imported, so other tests don`t scan it.
+     */
+    static class Blocker {
+        @Bean
+        @Scope("prototype")
+        public String deferredBlocker() throws InterruptedException {
+            RELEASE.await(60, TimeUnit.SECONDS);
+            return "released";
+        }
+    }
+
+    @Autowired
+    StartupDeferredConfig startup;
+
+    @Autowired
+    StartupTimings timings;
+
+    @Value("${local.server.port}")
+    int port;
+
+    @Test
+    public void testDeferred() throws Exception {
+        // Not ready while deferred work is pending
+        Assert.assertFalse(startup.getDone().isDone());
+        Health health = startup.startupHealthIndicator().health();
+        Assert.assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+        Assert.assertTrue(health.getDetails().get("pending").toString().contains("deferredBlocker"));
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/management/health").openConnection();
+        Assert.assertEquals(503, conn.getResponseCode());
+
+        RELEASE.countDown();
+        startup.getDone().get(60, TimeUnit.SECONDS);
+        Assert.assertEquals(Status.UP, startup.startupHealthIndicator().health().getStatus());
+        Assert.assertTrue(timings.top(timings.size()).stream().anyMatch(t -> t.getName().equals("deferred:jedisPool")));
+        Assert.assertTrue(timings.top(timings.size()).stream().anyMatch(t -> t.getName().startsWith("deferred:" + StartupDeferredConfig.SPRINGFOX_BOOTSTRAPPER)));
+
+        // Documentation available after deferred scanning
+        conn = (HttpURLConnection) new URL("http://localhost:" + port + "/api/openapi.json").openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+        conn = (HttpURLConnection) new URL("http://localhost:" + port + "/management/health").openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+    }
+}
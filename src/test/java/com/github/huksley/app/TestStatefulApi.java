@@ -0,0 +1,73 @@
+package com.github.huksley.app;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.github.huksley.app.system.SecurityConfigurer;
+
+/**
+ * With security.api.stateless=false token authenticated API requests use session, API key requests still don`t.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+    "security.api.stateless = false",
+    "security.insecure = false",
+    "jwt.password = test-secret",
+    "JWT_PASSWORD = test-secret",
+    "security.apikey.keys = ci:4c806362b613f7496abf284146efd31da90e4b16169fe001841ca17290f427c4:USER"
+})
+public class TestStatefulApi {
+    @Autowired
+    WebApplicationContext app;
+
+    @Autowired
+    SecurityConfigurer security;
+
+    MockMvc mock;
+
+    @Before
+    public void setupMockMvc() {
+        mock = MockMvcBuilders.webAppContextSetup(app).apply(SecurityMockMvcConfigurers.springSecurity()).build();
+    }
+
+    @Test
+    public void testApiKeyNotStored() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        mock.perform(MockMvcRequestBuilders.get("/api/test").
+                session(session).
+                header(SecurityConfigurer.HEADER_API_KEY, "test-api-key")).
+            andExpect(MockMvcResultMatchers.status().isNotFound());
+        Assert.assertNull(session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+    }
+
+    @Test
+    public void testTokenStored() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        MockHttpSession session = new MockHttpSession();
+        mock.perform(MockMvcRequestBuilders.get("/api/test").
+                session(session).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.status().isNotFound());
+        Assert.assertNotNull(session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+    }
+}
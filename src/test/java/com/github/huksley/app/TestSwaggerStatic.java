@@ -0,0 +1,84 @@
+package com.github.huksley.app;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+import com.github.huksley.app.system.SwaggerSpecConfig;
+
+import springfox.documentation.spring.web.plugins.Docket;
+
+/**
+ * Spec generated during build is served in swagger.mode=static without Springfox.
+ * Requires build (process-test-classes) to generate spec, context fails to start without it.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+    "swagger.mode = static",
+    "jwt.password = test-secret",
+    "JWT_PASSWORD = test-secret"
+})
+public class TestSwaggerStatic {
+    @Autowired
+    ApplicationContext app;
+
+    @Autowired
+    SwaggerSpecConfig swagger;
+
+    @Value("${local.server.port}")
+    int port;
+
+    @Test
+    public void testNoSpringfox() {
+        Assert.assertTrue(app.getBeansOfType(Docket.class).isEmpty());
+    }
+
+    @Test
+    public void testStaticSpec() throws Exception {
+        InputStream is = getClass().getResourceAsStream(SwaggerSpecConfig.STATIC_SPEC);
+        String generated = new String(StreamUtils.copyToByteArray(is), StandardCharsets.UTF_8);
+        is.close();
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/api/openapi.json").openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertTrue(conn.getContentType().startsWith("application/json"));
+        Assert.assertNotNull(conn.getHeaderField("ETag"));
+        Assert.assertEquals(generated, new String(StreamUtils.copyToByteArray(conn.getInputStream()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGroups() throws Exception {
+        int variants = swagger.getSpecs().size();
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/api/openapi.json?group=default").openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+        for (int i = 0; i < 10; i++) {
+            conn = (HttpURLConnection) new URL("http://localhost:" + port + "/api/openapi.json?group=g" + i).openConnection();
+            Assert.assertEquals(404, conn.getResponseCode());
+        }
+        // Unknown groups are not cached
+        Assert.assertEquals(variants, swagger.getSpecs().size());
+    }
+
+    @Test
+    public void testSwaggerResources() throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/swagger-resources").openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+        Assert.assertEquals(200, conn.getResponseCode());
+        String json = new String(StreamUtils.copyToByteArray(conn.getInputStream()), StandardCharsets.UTF_8);
+        Assert.assertTrue(json.matches("(?s).*\"url\"\\s*:\\s*\"/api/openapi.json\".*"));
+    }
+}
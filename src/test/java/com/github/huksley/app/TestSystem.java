@@ -1,8 +1,19 @@
 package com.github.huksley.app;
 
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
 import com.jayway.jsonpath.matchers.JsonPathMatchers;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,10 +22,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
 import org.springframework.test.context.ActiveProfiles;
@@ -25,8 +41,15 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.github.huksley.app.system.SecurityConfigurer;
+import com.github.huksley.app.system.SecurityConfigurer.TokenAuthentication;
+import com.github.huksley.app.system.SecurityPasswordHasher;
+import com.github.huksley.app.system.SecurityTemplates;
+import com.github.huksley.app.system.SwaggerSpecConfig;
+
 @RunWith(SpringRunner.class)
 @ActiveProfiles("test")
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -37,15 +60,30 @@ import org.springframework.web.context.WebApplicationContext;
     "security.auth.test.password = 123",
     "security.auth.test.roles = USER,ADMIN",
     "forward.login.success=/auth/info",
-    "forward.logout.finish=/auth/info"
+    "forward.logout.finish=/auth/info",
+    "jwt.password = test-secret",
+    "JWT_PASSWORD = test-secret",
+    "security.apikey.keys = ci:4c806362b613f7496abf284146efd31da90e4b16169fe001841ca17290f427c4:USER"
 })
 public class TestSystem {
     private final Logger log = LoggerFactory.getLogger(getClass().getName());
 
     @Autowired
     WebApplicationContext app;
+
+    @Autowired
+    SecurityConfigurer security;
     MockMvc mock;
 
+    @Autowired
+    SwaggerSpecConfig swagger;
+
+    @Autowired
+    Environment env;
+
+    @Value("${local.server.port}")
+    int port;
+
     /**
      * Enable MockMvc with session support
      * https://stackoverflow.com/questions/26142631/why-does-spring-mockmvc-result-not-contain-a-cookie#26281932
@@ -77,6 +115,55 @@ public class TestSystem {
                 andExpect(MockMvcResultMatchers.content().string(JsonPathMatchers.isJson()));
     }
 
+    @Test
+    public void testSwaggerCached() throws Exception {
+        // Filter is not part of MockMvc, use real server
+        URL url = new URL("http://localhost:" + port + "/api/openapi.json");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertTrue(conn.getContentType().startsWith("application/json"));
+        String etag = conn.getHeaderField("ETag");
+        Assert.assertNotNull(etag);
+        String json = new String(StreamUtils.copyToByteArray(conn.getInputStream()), StandardCharsets.UTF_8);
+        Assert.assertTrue(json.contains("\"swagger\":\"2.0\""));
+        Assert.assertFalse(json.contains("\"host\":\"localhost\""));
+
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, conn.getResponseCode());
+
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertEquals("gzip", conn.getHeaderField("Content-Encoding"));
+        Assert.assertEquals(json, new String(StreamUtils.copyToByteArray(new GZIPInputStream(conn.getInputStream())), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSwaggerPrerendered() throws Exception {
+        // Prepared on startup, same as rendered on request
+        SecurityTemplates.Template prepared = swagger.getSpecs().get(SwaggerSpecConfig.key(null, null));
+        Assert.assertNotNull(prepared);
+        swagger.getSpecs().clear();
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/api/openapi.json").openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertEquals(prepared.getEtag(), conn.getHeaderField("ETag"));
+        Assert.assertEquals(new String(prepared.getBody(), StandardCharsets.UTF_8), new String(StreamUtils.copyToByteArray(conn.getInputStream()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSwaggerStaticMatchesRuntime() throws Exception {
+        // Generated during build by OpenApiGenerator, absent when running from IDE
+        InputStream is = getClass().getResourceAsStream(SwaggerSpecConfig.STATIC_SPEC);
+        Assume.assumeNotNull(is);
+        String generated = new String(StreamUtils.copyToByteArray(is), StandardCharsets.UTF_8);
+        is.close();
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/api/openapi.json").openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+        Assert.assertEquals(new String(StreamUtils.copyToByteArray(conn.getInputStream()), StandardCharsets.UTF_8), generated);
+    }
+
     @Test
     public void testSwaggerAsRequestedByBrowser() throws Exception {
         // OpenAPI (swagger spec)
@@ -88,4 +175,279 @@ public class TestSystem {
             andExpect(MockMvcResultMatchers.content().string(JsonPathMatchers.isJson()));
     }
 
+    @Test
+    public void testNoPasswordHasher() {
+        // Only hashed and directory authenticators need it
+        Assert.assertTrue(app.getBeansOfType(SecurityPasswordHasher.class).isEmpty());
+    }
+
+    @Test
+    public void testTokenAuth() throws Exception {
+        for (String format: new String[] { SecurityConfigurer.TOKEN_FORMAT_V1, SecurityConfigurer.TOKEN_FORMAT_V2 }) {
+            String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN", "ROLE_CUSTOM")), 60000, format);
+            assertTokenAuth(token, "ROLE_USER", "ROLE_CUSTOM");
+            // Second time from cache
+            assertTokenAuth(token, "ROLE_USER", "ROLE_CUSTOM");
+        }
+    }
+
+    void assertTokenAuth(String token, String... roles) throws Exception {
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_AUTH, token).
+                accept("application/json")).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.jsonPath("$.login").value("test")).
+            andExpect(MockMvcResultMatchers.jsonPath("$.roles").value(Matchers.hasItems(roles))).
+            andExpect(MockMvcResultMatchers.jsonPath("$.roles").value(Matchers.hasItem(SecurityConfigurer.ROLE_AUTH_TOKEN)));
+    }
+
+    @Test
+    public void testTokenRefresh() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.header().doesNotExist(SecurityConfigurer.HEADER_AUTH));
+
+        // Past half of lifetime, token itself is still valid
+        security.setClock(Clock.offset(Clock.systemUTC(), Duration.ofSeconds(40)));
+        try {
+            String refreshed = mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                    session(new MockHttpSession()).
+                    header(SecurityConfigurer.HEADER_AUTH, token)).
+                andExpect(MockMvcResultMatchers.status().isOk()).
+                andExpect(MockMvcResultMatchers.header().string(SecurityConfigurer.HEADER_AUTH, Matchers.not(token))).
+                andReturn().getResponse().getHeader(SecurityConfigurer.HEADER_AUTH);
+            // Original login time carried forward
+            long loginAt = ((TokenAuthentication) security.restoreToken(token)).getLoginAt();
+            Assert.assertNotEquals(0, loginAt);
+            Assert.assertEquals(loginAt, ((TokenAuthentication) security.restoreToken(refreshed)).getLoginAt());
+        } finally {
+            security.setClock(Clock.systemUTC());
+        }
+    }
+
+    @Test
+    public void testTokenRefreshSession() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        MockHttpSession session = new MockHttpSession();
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(session).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.header().doesNotExist(SecurityConfigurer.HEADER_AUTH));
+
+        // Authentication now comes from session, token filter is skipped
+        security.setClock(Clock.offset(Clock.systemUTC(), Duration.ofSeconds(40)));
+        try {
+            String refreshed = mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                    session(session)).
+                andExpect(MockMvcResultMatchers.status().isOk()).
+                andExpect(MockMvcResultMatchers.header().string(SecurityConfigurer.HEADER_AUTH, Matchers.not(token))).
+                andExpect(MockMvcResultMatchers.cookie().value(SecurityConfigurer.COOKIE_AUTH, Matchers.not(token))).
+                andReturn().getResponse().getHeader(SecurityConfigurer.HEADER_AUTH);
+
+            // Session keeps refreshed token, not refreshed again
+            mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                    session(session)).
+                andExpect(MockMvcResultMatchers.status().isOk()).
+                andExpect(MockMvcResultMatchers.header().doesNotExist(SecurityConfigurer.HEADER_AUTH));
+            SecurityContext ctx = (SecurityContext) session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+            Assert.assertEquals(refreshed, ((TokenAuthentication) ctx.getAuthentication()).getToken());
+        } finally {
+            security.setClock(Clock.systemUTC());
+        }
+    }
+
+    @Test
+    public void testTokenRefreshMaxAge() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        long maxAge = env.getProperty("jwt.refresh.max-age", Long.class);
+        security.setClock(Clock.offset(Clock.systemUTC(), Duration.ofMillis(maxAge + 1000)));
+        try {
+            mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                    session(new MockHttpSession()).
+                    header(SecurityConfigurer.HEADER_AUTH, token)).
+                andExpect(MockMvcResultMatchers.status().isOk()).
+                andExpect(MockMvcResultMatchers.header().doesNotExist(SecurityConfigurer.HEADER_AUTH));
+        } finally {
+            security.setClock(Clock.systemUTC());
+        }
+    }
+
+    @Test
+    public void testTokenTimeoutJitter() {
+        long timeout = env.getProperty("server.session.timeout", Integer.class, 7200) * 1000L;
+        double jitter = env.getProperty("jwt.expiry.jitter", Double.class);
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            long t = security.tokenTimeout();
+            Assert.assertTrue("Timeout " + t, t <= timeout && t >= timeout - (long) (timeout * jitter));
+            seen.add(t);
+        }
+        Assert.assertTrue(seen.size() > 1);
+    }
+
+    @Test
+    public void testTokenRevocation() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        assertTokenAuth(token, "ROLE_USER");
+        mock.perform(MockMvcRequestBuilders.post("/auth/logout").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.status().is3xxRedirection());
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_AUTH, token).
+                accept("application/json")).
+            andExpect(MockMvcResultMatchers.status().isUnauthorized());
+    }
+
+    @Test
+    public void testStatelessApi() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        MockHttpSession session = new MockHttpSession();
+        mock.perform(MockMvcRequestBuilders.get("/api/test").
+                session(session).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.status().isNotFound());
+        Assert.assertNull(session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+
+        // Not API - stored in session
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(session).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.status().isOk());
+        Assert.assertNotNull(session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+    }
+
+    @Test
+    public void testStatelessApiRejectedTokenUsesSession() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 60000);
+        MockHttpSession session = new MockHttpSession();
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(session).
+                header(SecurityConfigurer.HEADER_AUTH, token)).
+            andExpect(MockMvcResultMatchers.status().isOk());
+        Assert.assertNotNull(session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+
+        // Stale token does not hide authenticated session
+        mock.perform(MockMvcRequestBuilders.get("/api/test").
+                session(session).
+                header(SecurityConfigurer.HEADER_AUTH, "invalid.token.value")).
+            andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void testInvalidToken() throws Exception {
+        mock.perform(MockMvcRequestBuilders.get("/api/test").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_AUTH, "invalid.token.value").
+                accept("application/json")).
+            andExpect(MockMvcResultMatchers.status().is4xxClientError());
+    }
+
+    @Test
+    public void testInfoEscaping() throws Exception {
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(new MockHttpSession()).
+                header("User-Agent", "evil\", \"x\": \"\\").
+                header("X-Real-IP", "1.2.3.4\n")).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith("application/json")).
+            andExpect(MockMvcResultMatchers.jsonPath("$.userAgent").value("evil\", \"x\": \"\\")).
+            andExpect(MockMvcResultMatchers.jsonPath("$.realIp").value("1.2.3.4\n")).
+            andExpect(MockMvcResultMatchers.jsonPath("$.x").doesNotExist()).
+            andExpect(MockMvcResultMatchers.content().string(Matchers.startsWith("{\n\"type\": \"test\",\n")));
+
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                param("var", "app.auth").
+                session(new MockHttpSession())).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith("application/javascript")).
+            andExpect(MockMvcResultMatchers.content().string(Matchers.startsWith("var app.auth = {\n")));
+
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                param("var", "x=alert(1)").
+                session(new MockHttpSession())).
+            andExpect(MockMvcResultMatchers.status().isBadRequest());
+
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                param("amd", "true").
+                session(new MockHttpSession())).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.content().string(Matchers.endsWith(" \n}});")));
+    }
+
+    @Test
+    public void testIntrospect() throws Exception {
+        String token = security.createToken(new UsernamePasswordAuthenticationToken("test", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER")), 30000);
+        String body = "{ \"tokens\": [ \"" + token + "\", \"invalid.token.value\" ] }";
+        mock.perform(MockMvcRequestBuilders.post("/auth/introspect").
+                contentType(MediaType.APPLICATION_JSON).
+                content(body)).
+            andExpect(MockMvcResultMatchers.status().is3xxRedirection());
+
+        // Authenticated, but not in security.introspect.roles
+        mock.perform(MockMvcRequestBuilders.post("/auth/introspect").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_AUTH, token).
+                contentType(MediaType.APPLICATION_JSON).
+                content(body)).
+            andExpect(MockMvcResultMatchers.status().isForbidden());
+
+        mock.perform(MockMvcRequestBuilders.post("/auth/introspect").
+                header(SecurityConfigurer.HEADER_API_KEY, "test-api-key").
+                contentType(MediaType.APPLICATION_JSON).
+                content(body)).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.header().string("Cache-Control", Matchers.startsWith("private, max-age="))).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[0].active").value(true)).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[0].sub").value("test")).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[0].roles", Matchers.hasItem("ROLE_USER"))).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[0].exp").isNumber()).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[0].ttl", Matchers.lessThanOrEqualTo(30))).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[1].active").value(false)).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[1].sub").doesNotExist());
+
+        // Large batch is verified in parallel, order is kept
+        StringBuilder batch = new StringBuilder("{ \"tokens\": [ ");
+        for (int i = 0; i < 100; i++) {
+            batch.append(i > 0 ? ", " : "").append('"').append(i % 3 == 0 ? "invalid" : token).append('"');
+        }
+        mock.perform(MockMvcRequestBuilders.post("/auth/introspect").
+                header(SecurityConfigurer.HEADER_API_KEY, "test-api-key").
+                contentType(MediaType.APPLICATION_JSON).
+                content(batch.append(" ] }").toString())).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results.length()").value(100)).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[99].active").value(false)).
+            andExpect(MockMvcResultMatchers.jsonPath("$.results[98].active").value(true));
+    }
+
+    @Test
+    public void testApiKey() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        mock.perform(MockMvcRequestBuilders.get("/auth/info").
+                session(session).
+                header(SecurityConfigurer.HEADER_API_KEY, "test-api-key")).
+            andExpect(MockMvcResultMatchers.status().isOk()).
+            andExpect(MockMvcResultMatchers.jsonPath("$.login").value("ci")).
+            andExpect(MockMvcResultMatchers.jsonPath("$.roles", Matchers.hasItem("ROLE_AUTH_APIKEY")));
+        Assert.assertNull(session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+
+        mock.perform(MockMvcRequestBuilders.get("/api/test").
+                session(new MockHttpSession()).
+                header(SecurityConfigurer.HEADER_API_KEY, "wrong-api-key")).
+            andExpect(MockMvcResultMatchers.status().isUnauthorized());
+    }
 }
@@ -0,0 +1,128 @@
+package com.github.huksley.app.system;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.util.StreamUtils;
+
+import com.github.huksley.app.ApplicationEntrypoint;
+
+/**
+ * Load test of /auth/introspect, many concurrent gateway clients posting token batches
+ * against small container thread pool.
+ * Not a unit test, run manually:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.github.huksley.app.system.BenchmarkIntrospection
+ * </pre>
+ */
+public class BenchmarkIntrospection {
+    static final long DURATION_MS = 10000;
+    static final int CLIENTS = 64;
+    static final int BATCH = 64;
+    static final String API_KEY = "test-api-key";
+
+    static String[] run() throws Exception {
+        ConfigurableApplicationContext ctx = new SpringApplicationBuilder(ApplicationEntrypoint.class).run(
+            "--server.port=0",
+            "--server.tomcat.max-threads=8",
+            "--jwt.password=benchmark-secret",
+            "--security.token.cache.size=0",
+            "--security.apikey.keys=ci:4c806362b613f7496abf284146efd31da90e4b16169fe001841ca17290f427c4:USER",
+            "--logging.level.root=WARN");
+        try {
+            SecurityConfigurer security = ctx.getBean(SecurityConfigurer.class);
+            URL url = new URL("http://localhost:" + ctx.getEnvironment().getProperty("local.server.port") + "/auth/introspect");
+            StringBuilder body = new StringBuilder("{ \"tokens\": [ ");
+            for (int i = 0; i < BATCH; i++) {
+                String token = security.createToken(new UsernamePasswordAuthenticationToken("user" + i, null,
+                    AuthorityUtils.createAuthorityList("ROLE_USER")), 3600000);
+                body.append(i > 0 ? ", " : "").append('"').append(token).append('"');
+            }
+            byte[] request = body.append(" ] }").toString().getBytes(StandardCharsets.UTF_8);
+
+            // Warmup
+            post(url, request);
+            LongAdder count = new LongAdder();
+            LongAdder errors = new LongAdder();
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            CountDownLatch start = new CountDownLatch(1);
+            long[] deadline = new long[1];
+            List<Thread> l = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                Thread t = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (System.currentTimeMillis() < deadline[0]) {
+                        long t0 = System.nanoTime();
+                        if (post(url, request)) {
+                            count.increment();
+                            latencies.add(System.nanoTime() - t0);
+                        } else {
+                            errors.increment();
+                        }
+                    }
+                });
+                t.start();
+                l.add(t);
+            }
+            deadline[0] = System.currentTimeMillis() + DURATION_MS;
+            start.countDown();
+            for (Thread t: l) {
+                t.join();
+            }
+
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            long p50 = sorted.length > 0 ? sorted[sorted.length / 2] / 1000000 : 0;
+            long p99 = sorted.length > 0 ? sorted[sorted.length * 99 / 100] / 1000000 : 0;
+            return new String[] { String.valueOf(count.sum() * 1000 / DURATION_MS), String.valueOf(p50), String.valueOf(p99), String.valueOf(errors.sum()) };
+        } finally {
+            ctx.close();
+        }
+    }
+
+    static boolean post(URL url, byte[] request) {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty(SecurityConfigurer.HEADER_API_KEY, API_KEY);
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(request);
+            }
+            try (InputStream is = conn.getInputStream()) {
+                StreamUtils.drain(is);
+            }
+            return conn.getResponseCode() == 200;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        String[] r = run();
+        System.out.println("requests/s\tp50 ms\tp99 ms\terrors");
+        System.out.println(String.join("\t", r));
+        // Application executors may keep JVM running
+        System.exit(0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.huksley.app.system;
+
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * Reports token size and verification cost per token format.
+ * Not a unit test, run manually:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.github.huksley.app.system.BenchmarkTokenFormat
+ * </pre>
+ */
+public class BenchmarkTokenFormat {
+    static final int WARMUP = 20000;
+    static final int ITERATIONS = 100000;
+
+    /**
+     * Creates standalone configurer with token cache disabled, so every restore is verified.
+     */
+    static SecurityConfigurer configurer(MockEnvironment env) {
+        SecurityConfigurer c = new SecurityConfigurer();
+        c.env = env;
+        c.tokenCache = new SecurityTokenCache();
+        c.tokenCache.env = env;
+        c.tokenCache.init();
+        c.keyring = new SecurityKeyring();
+        c.keyring.env = env;
+        c.keyring.tokenCache = c.tokenCache;
+        c.keyring.reload();
+        c.roleTable = new SecurityRoleTable();
+        c.roleTable.env = env;
+        c.roleTable.init();
+        c.revocations = new SecurityRevocationList();
+        c.revocations.env = env;
+        c.revocations.bus = new SecurityRevocationBusLocal();
+        c.revocations.init();
+        c.minter = new SecurityTokenMinter();
+        c.minter.keyring = c.keyring;
+        c.minter.roleTable = c.roleTable;
+        return c;
+    }
+
+    public static void main(String[] args) {
+        MockEnvironment env = new MockEnvironment()
+            .withProperty("jwt.password", "benchmark-secret")
+            .withProperty("security.token.cache.size", "0");
+        SecurityConfigurer c = configurer(env);
+        Authentication auth = new UsernamePasswordAuthenticationToken("benchmark", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN", SecurityConfigurer.ROLE_AUTH_PASSWORD));
+
+        for (String format: new String[] { SecurityConfigurer.TOKEN_FORMAT_V1, SecurityConfigurer.TOKEN_FORMAT_V2 }) {
+            String token = c.createToken(auth, 3600000, format);
+            for (int i = 0; i < WARMUP; i++) {
+                c.restoreToken(token);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                c.restoreToken(token);
+            }
+            long ns = (System.nanoTime() - start) / ITERATIONS;
+            System.out.println(String.format("%s: token size %d bytes, verify %d ns/op", format, token.length(), ns));
+        }
+    }
+}
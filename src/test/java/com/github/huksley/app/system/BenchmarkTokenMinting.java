@@ -0,0 +1,92 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.impl.compression.GzipCompressionCodec;
+
+/**
+ * Multi-threaded token minting throughput, {@link SecurityTokenMinter} against plain jjwt builder.
+ * Not a unit test, run manually:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.github.huksley.app.system.BenchmarkTokenMinting
+ * </pre>
+ */
+public class BenchmarkTokenMinting {
+    static final long DURATION_MS = 2000;
+
+    interface Mint {
+        String mint();
+    }
+
+    static long run(int threads, Mint mint) throws InterruptedException {
+        LongAdder count = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> l = new ArrayList<>();
+        long[] deadline = new long[1];
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.currentTimeMillis() < deadline[0]) {
+                    mint.mint();
+                    count.increment();
+                }
+            });
+            t.start();
+            l.add(t);
+        }
+        deadline[0] = System.currentTimeMillis() + DURATION_MS;
+        start.countDown();
+        for (Thread t: l) {
+            t.join();
+        }
+        return count.sum() * 1000 / DURATION_MS;
+    }
+
+    public static void main(String[] args) throws Exception {
+        MockEnvironment env = new MockEnvironment().withProperty("jwt.password", "benchmark-secret");
+        SecurityConfigurer c = BenchmarkTokenFormat.configurer(env);
+        Authentication auth = new UsernamePasswordAuthenticationToken("benchmark", null,
+            AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN", SecurityConfigurer.ROLE_AUTH_PASSWORD));
+
+        Mint jjwt = () -> {
+            long exp = System.currentTimeMillis() + 3600000;
+            return Jwts.builder().setId(UUID.randomUUID().toString())
+                .setIssuedAt(new Date())
+                .setSubject(auth.getName())
+                .setAudience("ROLE_USER, ROLE_ADMIN, ROLE_AUTH_PASSWORD")
+                .signWith(SecurityKeyring.ALGORITHM, c.keyring.getSigningKey())
+                .compressWith(new GzipCompressionCodec())
+                .setExpiration(new Date(exp))
+                .compact() + ":" + exp;
+        };
+        Mint v1 = () -> c.createToken(auth, 3600000, SecurityConfigurer.TOKEN_FORMAT_V1);
+        Mint v2 = () -> c.createToken(auth, 3600000, SecurityConfigurer.TOKEN_FORMAT_V2);
+
+        // Warmup
+        run(1, jjwt);
+        run(1, v1);
+        run(1, v2);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("threads\tjjwt\tminter v1\tminter v2 (tokens/s)");
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            System.out.println(threads + "\t" + run(threads, jjwt) + "\t" + run(threads, v1) + "\t" + run(threads, v2));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.huksley.app.system;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.github.huksley.app.ApplicationEntrypoint;
+
+/**
+ * Throughput of platform and virtual thread modes (server.threads) with many concurrent slow requests:
+ * form logins against test authenticator with simulated backend latency, called directly (not via bounded executor).
+ * Requires JDK 21+, optional args are concurrency (default 10000) and latency ms (default 200).
+ * Before JDK 24 virtual threads are pinned by Tomcat request processing, so expect no gain there.
+ * Not a unit test, run manually:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.github.huksley.app.system.BenchmarkVirtualThreads
+ * </pre>
+ */
+public class BenchmarkVirtualThreads {
+    static final int ROUNDS = 3;
+
+    static String[] run(String threads, int concurrency, int latency) throws Exception {
+        ConfigurableApplicationContext ctx = new SpringApplicationBuilder(ApplicationEntrypoint.class).run(
+            "--server.port=0",
+            "--server.threads=" + threads,
+            "--server.threads.force=true",
+            "--server.tomcat.max-connections=" + (concurrency * 2),
+            "--server.tomcat.accept-count=" + concurrency,
+            "--security.auth.async=false",
+            "--security.auth.test.latency=" + latency,
+            "--security.login.throttle=false",
+            "--logging.level.root=WARN");
+        try {
+            URL url = new URL("http://localhost:" + ctx.getEnvironment().getProperty("local.server.port") + "/auth/authenticate");
+            byte[] form = "username=test&password=123".getBytes(StandardCharsets.UTF_8);
+            LongAdder ok = new LongAdder();
+            LongAdder errors = new LongAdder();
+            // Warmup
+            login(url, form);
+
+            long start = System.nanoTime();
+            ExecutorService clients = VirtualThreadsConfig.create();
+            try {
+                for (int r = 0; r < ROUNDS; r++) {
+                    List<Future<Boolean>> l = new ArrayList<>(concurrency);
+                    for (int i = 0; i < concurrency; i++) {
+                        l.add(clients.submit(() -> login(url, form)));
+                    }
+                    for (Future<Boolean> f: l) {
+                        if (f.get()) {
+                            ok.increment();
+                        } else {
+                            errors.increment();
+                        }
+                    }
+                }
+            } finally {
+                clients.shutdownNow();
+            }
+            long ms = (System.nanoTime() - start) / 1000000;
+            return new String[] { threads, String.valueOf(ok.sum() * 1000 / Math.max(ms, 1)), String.valueOf(ms), String.valueOf(errors.sum()) };
+        } finally {
+            ctx.close();
+        }
+    }
+
+    static boolean login(URL url, byte[] form) {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setInstanceFollowRedirects(false);
+            conn.setConnectTimeout(60000);
+            conn.setReadTimeout(120000);
+            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(form);
+            }
+            int code = conn.getResponseCode();
+            conn.disconnect();
+            // Successful login redirects to /auth/success
+            return code == 302 && conn.getHeaderField("Location").endsWith("/auth/success");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int latency = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        List<String[]> results = new ArrayList<>();
+        results.add(run("platform", concurrency, latency));
+        results.add(run("virtual", concurrency, latency));
+        System.out.println("JDK " + System.getProperty("java.version"));
+        System.out.println("threads\tlogins/s\ttotal ms\terrors (" + concurrency + " concurrent, " + latency + " ms latency)");
+        for (String[] r: results) {
+            System.out.println(String.join("\t", r));
+        }
+        // Application executors may keep JVM running
+        System.exit(0);
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+public class TestAuthoritySet {
+    @Test
+    public void testContains() {
+        AuthoritySet s = AuthoritySet.of("ROLE_USER", "ROLE_ADMIN", "ROLE_USER");
+        Assert.assertEquals(2, s.size());
+        Assert.assertTrue(s.contains(new SimpleGrantedAuthority("ROLE_USER")));
+        Assert.assertTrue(s.contains("ROLE_ADMIN"));
+        Assert.assertFalse(s.contains("ROLE_NEVER_REGISTERED"));
+        Assert.assertSame(AuthorityRegistry.authority("ROLE_USER"), AuthorityRegistry.authority("ROLE_USER"));
+        Assert.assertEquals(new HashSet<>(AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN")), s);
+        Assert.assertEquals(s, AuthoritySet.of(AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER")));
+        Assert.assertSame(AuthoritySet.EMPTY, new AuthoritySet.Builder().add("ROLE_X").remove("ROLE_X").build());
+    }
+
+    @Test
+    public void testSerializable() throws Exception {
+        AuthoritySet s = AuthoritySet.of("ROLE_USER", "ROLE_ADMIN");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(bos)) {
+            os.writeObject(s);
+        }
+        try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            Assert.assertEquals(s, is.readObject());
+        }
+    }
+}
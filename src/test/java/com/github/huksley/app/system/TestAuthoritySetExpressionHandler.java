@@ -0,0 +1,60 @@
+package com.github.huksley.app.system;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.FilterInvocation;
+
+import com.github.huksley.app.system.SecurityConfigurer.TokenAuthentication;
+
+public class TestAuthoritySetExpressionHandler {
+    AuthoritySetExpressionHandler handler = new AuthoritySetExpressionHandler();
+
+    FilterInvocation request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test");
+        request.setRemoteAddr("127.0.0.1");
+        return new FilterInvocation(request, new MockHttpServletResponse(), new MockFilterChain());
+    }
+
+    boolean eval(Authentication auth, String expression) {
+        EvaluationContext ctx = handler.createEvaluationContext(auth, request());
+        return ExpressionUtils.evaluateAsBoolean(handler.getExpressionParser().parseExpression(expression), ctx);
+    }
+
+    @Test
+    public void testAuthorities() {
+        Authentication auth = new UsernamePasswordAuthenticationToken("test", null, AuthorityUtils.createAuthorityList("ROLE_USER", "CUSTOM"));
+        Assert.assertTrue(eval(auth, "hasAuthority('CUSTOM')"));
+        Assert.assertTrue(eval(auth, "hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')"));
+        Assert.assertFalse(eval(auth, "hasAnyAuthority('ROLE_ADMIN')"));
+        Assert.assertTrue(eval(auth, "hasRole('USER') and hasRole('ROLE_USER')"));
+        Assert.assertFalse(eval(auth, "hasAnyRole('ADMIN', 'CUSTOM')"));
+        Assert.assertTrue(eval(auth, "permitAll and authenticated and fullyAuthenticated and !anonymous"));
+        Assert.assertFalse(eval(auth, "denyAll"));
+        Assert.assertTrue(eval(auth, "principal == 'test'"));
+        Assert.assertTrue(eval(auth, "hasIpAddress('127.0.0.1')"));
+    }
+
+    @Test
+    public void testNoCopy() {
+        TokenAuthentication auth = new TokenAuthentication("test", AuthorityUtils.createAuthorityList("ROLE_USER"), 60000, "token");
+        AuthoritySetExpressionHandler.Root root = (AuthoritySetExpressionHandler.Root) handler.createEvaluationContext(auth, request()).getRootObject().getValue();
+        Assert.assertTrue(root.hasAuthority("ROLE_USER"));
+        Assert.assertSame(auth.getAuthorities(), root.authorities());
+    }
+
+    @Test
+    public void testAnonymous() {
+        Authentication auth = new AnonymousAuthenticationToken("key", "anonymousUser", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+        Assert.assertTrue(eval(auth, "anonymous"));
+        Assert.assertFalse(eval(auth, "hasAnyAuthority('ROLE_USER')"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.huksley.app.system;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class TestMDC {
+    @Test
+    public void testWrap() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Pollute worker thread, must be restored after task
+            executor.submit(() -> org.slf4j.MDC.put("traceId", "worker")).get();
+
+            MDC.var("traceId", "request-1");
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("test", null));
+            Callable<String> task = MDC.wrap(() -> org.slf4j.MDC.get("traceId") + " " + SecurityContextHolder.getContext().getAuthentication().getName());
+            Assert.assertEquals("request-1 test", executor.submit(task).get());
+
+            Assert.assertEquals("worker", executor.submit(() -> org.slf4j.MDC.get("traceId")).get());
+            Assert.assertNull(executor.submit(() -> SecurityContextHolder.getContext().getAuthentication()).get());
+        } finally {
+            org.slf4j.MDC.clear();
+            SecurityContextHolder.clearContext();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.huksley.app.system;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.google.common.cache.Cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Two managers sharing one in-memory L2 act as two nodes.
+ */
+public class TestNearCache {
+    NearCacheStoreMemory store;
+    NearCacheManager node1;
+    NearCacheManager node2;
+    SimpleMeterRegistry registry;
+
+    @Before
+    public void setupNodes() {
+        MockEnvironment env = new MockEnvironment().withProperty("cache.test.size", "100");
+        store = new NearCacheStoreMemory();
+        registry = new SimpleMeterRegistry();
+        node1 = new NearCacheManager(store, env, registry);
+        node2 = new NearCacheManager(store, env, new SimpleMeterRegistry());
+    }
+
+    double count(String tier, String result) {
+        return registry.get("cache.near.requests").tags("cache", "test", "tier", tier, "result", result).counter().count();
+    }
+
+    @Test
+    public void testReadThroughTiers() {
+        node1.getCache("test").put("a", "A");
+        Assert.assertEquals("A", node1.getCache("test").get("a", String.class));
+        Assert.assertEquals(1.0, count("l1", "hit"), 0);
+
+        // Other node finds value in L2, then in its own L1
+        Assert.assertEquals("A", node2.getCache("test").get("a", String.class));
+        Assert.assertEquals("A", node2.getCache("test").get("a", String.class));
+
+        Assert.assertNull(node1.getCache("test").get("missing"));
+        Assert.assertEquals(1.0, count("l2", "miss"), 0);
+    }
+
+    @Test
+    public void testInvalidatesOtherNodes() {
+        node1.getCache("test").put("a", "A");
+        Assert.assertEquals("A", node2.getCache("test").get("a", String.class));
+        node1.getCache("test").put("a", "B");
+        Assert.assertEquals("B", node2.getCache("test").get("a", String.class));
+        node1.getCache("test").evict("a");
+        Assert.assertNull(node2.getCache("test").get("a"));
+
+        node2.getCache("test").put("b", "B");
+        Assert.assertEquals("B", node1.getCache("test").get("b", String.class));
+        node2.getCache("test").clear();
+        Assert.assertNull(node1.getCache("test").get("b"));
+    }
+
+    @Test
+    public void testInvalidatesNonStringKeys() {
+        node1.getCache("test").put(42, "A");
+        Assert.assertEquals("A", node2.getCache("test").get(42, String.class));
+        node1.getCache("test").evict(42);
+        Assert.assertNull(node2.getCache("test").get(42));
+        Assert.assertEquals(0, ((Cache<?, ?>) node2.getCache("test").getNativeCache()).size());
+    }
+
+    @Test
+    public void testValueLoader() {
+        AtomicInteger calls = new AtomicInteger();
+        Assert.assertEquals("X", node1.getCache("test").get("x", () -> "X" + calls.incrementAndGet()).substring(0, 1));
+        Assert.assertEquals("X1", node2.getCache("test").get("x", () -> "X" + calls.incrementAndGet()));
+        Assert.assertEquals(1, calls.get());
+
+        // Nulls are cached too
+        Assert.assertNull(node1.getCache("test").get("n", () -> {
+            calls.incrementAndGet();
+            return null;
+        }));
+        Assert.assertNotNull(node2.getCache("test").get("n"));
+        Assert.assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+public class TestSecurityAuthenticatorAsync {
+    MockEnvironment env;
+    SecurityAuthenticatorTest backend;
+    AtomicInteger calls;
+    CountDownLatch blocked;
+    SecurityAuthenticatorAsync async;
+
+    @Before
+    public void setupBackend() {
+        env = new MockEnvironment()
+            .withProperty("security.auth.test.timeout", "500")
+            .withProperty("security.auth.test.breaker.failures", "2")
+            .withProperty("security.auth.test.breaker.open", "60000");
+        calls = new AtomicInteger();
+        blocked = new CountDownLatch(1);
+        backend = new SecurityAuthenticatorTest() {
+            @Override
+            public Authentication authenticate(SecurityLoginProvider logins, Authentication unauth) {
+                calls.incrementAndGet();
+                if ("down".equals(unauth.getCredentials())) {
+                    throw new AuthenticationServiceException("Backend down");
+                }
+                if ("block".equals(unauth.getCredentials())) {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    unauth = new UsernamePasswordAuthenticationToken(unauth.getName(), "123");
+                }
+                return super.authenticate(logins, unauth);
+            }
+        };
+        backend.env = env;
+        backend.init();
+        async = new SecurityAuthenticatorAsync(backend, env);
+    }
+
+    @After
+    public void shutdown() {
+        blocked.countDown();
+        async.shutdown();
+    }
+
+    void shortOpenInterval() {
+        env.setProperty("security.auth.test.breaker.open", "50");
+        // Blocked calls must not time out meanwhile
+        env.setProperty("security.auth.test.timeout", "5000");
+        async.shutdown();
+        async = new SecurityAuthenticatorAsync(backend, env);
+    }
+
+    /**
+     * Opens breaker, waits till trial is allowed
+     */
+    void halfOpen() throws InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            try {
+                login("down");
+                Assert.fail();
+            } catch (AuthenticationServiceException e) {
+                // Expected
+            }
+        }
+        Assert.assertTrue(async.isOpen());
+        Thread.sleep(100);
+    }
+
+    /**
+     * Trial must be available again, i.e. previous trial was settled
+     */
+    void assertTrialAvailable() {
+        SecurityAuthenticatorAsync.CircuitBreaker.Permit p = async.breaker.allow();
+        Assert.assertNotNull("Trial lost", p);
+        Assert.assertTrue(p.trial);
+        p.release();
+    }
+
+    void awaitInflight(int n) throws InterruptedException {
+        for (int i = 0; i < 100 && async.inflight.size() < n; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(n, async.inflight.size());
+    }
+
+    @Test
+    public void testRejectedTrialIsReleased() throws Exception {
+        shortOpenInterval();
+        halfOpen();
+        // Executor rejects everything after shutdown
+        async.shutdown();
+        try {
+            login("123");
+            Assert.fail();
+        } catch (AuthenticationServiceException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("busy"));
+        }
+        assertTrialAvailable();
+    }
+
+    @Test
+    public void testJoinerDoesNotTakeTrial() throws Exception {
+        shortOpenInterval();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // Leader started while breaker is closed
+            Future<Authentication> leader = pool.submit(() -> login("block"));
+            awaitInflight(1);
+            halfOpen();
+            Future<Authentication> joiner = pool.submit(() -> login("block"));
+            Thread.sleep(50);
+            assertTrialAvailable();
+            blocked.countDown();
+            Assert.assertTrue(leader.get().isAuthenticated());
+            Assert.assertTrue(joiner.get().isAuthenticated());
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertFalse(async.isOpen());
+    }
+
+    @Test
+    public void testInterruptedTrialIsReleased() throws Exception {
+        shortOpenInterval();
+        halfOpen();
+        Thread caller = Thread.currentThread();
+        ScheduledExecutorService interrupter = Executors.newSingleThreadScheduledExecutor();
+        try {
+            interrupter.schedule(caller::interrupt, 100, TimeUnit.MILLISECONDS);
+            try {
+                login("block");
+                Assert.fail();
+            } catch (AuthenticationServiceException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("Interrupted"));
+            }
+            Assert.assertTrue(Thread.interrupted());
+        } finally {
+            interrupter.shutdownNow();
+        }
+        assertTrialAvailable();
+    }
+
+    @Test
+    public void testCancelledTrialIsReleased() throws Exception {
+        shortOpenInterval();
+        halfOpen();
+        ScheduledExecutorService canceller = Executors.newSingleThreadScheduledExecutor();
+        try {
+            canceller.schedule(() -> async.inflight.values().forEach(f -> f.cancel(true)), 100, TimeUnit.MILLISECONDS);
+            try {
+                login("block");
+                Assert.fail();
+            } catch (AuthenticationServiceException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("cancelled"));
+            }
+        } finally {
+            canceller.shutdownNow();
+        }
+        assertTrialAvailable();
+    }
+
+    Authentication login(String password) {
+        return async.authenticate(null, new UsernamePasswordAuthenticationToken("test", password));
+    }
+
+    @Test
+    public void testCoalescesConcurrentCalls() throws Exception {
+        env.setProperty("security.auth.test.latency", "200");
+        backend.init();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Authentication>> l = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                l.add(pool.submit(() -> login("123")));
+            }
+            for (Future<Authentication> f: l) {
+                Assert.assertTrue(f.get().isAuthenticated());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertTrue("Backend calls " + calls.get(), calls.get() < 8);
+    }
+
+    @Test
+    public void testBadCredentialsDoNotOpenBreaker() {
+        for (int i = 0; i < 3; i++) {
+            try {
+                login("bad");
+                Assert.fail();
+            } catch (BadCredentialsException e) {
+                // Expected
+            }
+        }
+        Assert.assertFalse(async.isOpen());
+        Assert.assertTrue(login("123").isAuthenticated());
+    }
+
+    @Test
+    public void testTimeoutOpensBreaker() {
+        env.setProperty("security.auth.test.latency", "2000");
+        backend.init();
+        for (int i = 0; i < 2; i++) {
+            try {
+                login("123");
+                Assert.fail();
+            } catch (AuthenticationServiceException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+            }
+        }
+        Assert.assertTrue(async.isOpen());
+
+        int before = calls.get();
+        try {
+            login("123");
+            Assert.fail();
+        } catch (AuthenticationServiceException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("unavailable"));
+        }
+        Assert.assertEquals(before, calls.get());
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.huksley.app.system;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestSecurityAuthenticatorHashed {
+    MockEnvironment env;
+    SecurityPasswordHasher hasher;
+    SecurityAuthenticatorHashed auth;
+
+    @Before
+    public void setupUsers() {
+        env = new MockEnvironment()
+            .withProperty("security.auth.hash.strength", "4")
+            .withProperty("security.auth.hashed.users", "alice")
+            .withProperty("security.auth.hashed.user.alice.password", new BCryptPasswordEncoder(4).encode("secret"))
+            .withProperty("security.auth.hashed.user.alice.roles", "USER,ADMIN");
+        hasher = new SecurityPasswordHasher();
+        hasher.env = env;
+        hasher.init();
+        auth = new SecurityAuthenticatorHashed();
+        auth.env = env;
+        auth.hasher = hasher;
+        auth.init();
+    }
+
+    @After
+    public void shutdown() {
+        hasher.destroy();
+    }
+
+    Authentication login(String name, String password) {
+        return auth.authenticate(null, new UsernamePasswordAuthenticationToken(name, password));
+    }
+
+    @Test
+    public void testLogin() {
+        Authentication a = login("alice", "secret");
+        Assert.assertTrue(a.isAuthenticated());
+        Assert.assertTrue(AuthoritySet.of(a.getAuthorities()).contains("ROLE_ADMIN"));
+        Assert.assertEquals(1, hasher.executor.getTaskCount());
+
+        // Repeat login is verified from cache
+        login("alice", "secret");
+        Assert.assertEquals(1, hasher.verified.stats().hitCount());
+    }
+
+    @Test
+    public void testVerifiedOnHashPool() {
+        SecurityAuthenticatorAsync async = new SecurityAuthenticatorAsync(auth, env);
+        try {
+            Assert.assertTrue(async.authenticate(null, new UsernamePasswordAuthenticationToken("alice", "secret")).isAuthenticated());
+            // Authenticator thread hands off CPU work
+            Assert.assertEquals(1, hasher.executor.getTaskCount());
+        } finally {
+            async.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetricsRegistered() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SecurityPasswordHasher h = new SecurityPasswordHasher();
+        h.env = env;
+        h.registry = registry;
+        h.init();
+        try {
+            // Before any verification
+            Assert.assertNotNull(registry.find("security.auth.hash.queue").gauge());
+            Assert.assertNotNull(registry.find("security.auth.hash.active").gauge());
+            Assert.assertNotNull(registry.find("security.auth.hash.rejected").counter());
+            h.matches("alice", "secret", new BCryptPasswordEncoder(4).encode("secret"));
+            Assert.assertEquals(1, registry.find("security.auth.hash").timer().count());
+        } finally {
+            h.destroy();
+        }
+    }
+
+    @Test(expected = AuthenticationServiceException.class)
+    public void testTimeout() {
+        env.setProperty("security.auth.hash.timeout", "1");
+        SecurityPasswordHasher h = new SecurityPasswordHasher();
+        h.env = env;
+        h.init();
+        try {
+            h.matches("alice", "secret", new BCryptPasswordEncoder(12).encode("secret"));
+        } finally {
+            h.destroy();
+        }
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void testWrongPassword() {
+        login("alice", "wrong");
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void testUnknownUser() {
+        login("bob", "secret");
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.huksley.app.system;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class TestSecurityKeyring {
+    MockEnvironment env;
+    SecurityKeyring keyring;
+
+    @Before
+    public void setupKeyring() {
+        env = new MockEnvironment().withProperty("jwt.password", "first-secret");
+        keyring = new SecurityKeyring();
+        keyring.env = env;
+        keyring.tokenCache = new SecurityTokenCache();
+        keyring.tokenCache.env = env;
+        keyring.tokenCache.init();
+        keyring.reload();
+    }
+
+    @Test
+    public void testRotationReplacesSnapshot() {
+        SecurityKeyring.Keys before = keyring.getKeys();
+        Assert.assertNull(before.getKeyId());
+
+        env.setProperty("jwt.kid", "second");
+        env.setProperty("jwt.password", "second-secret");
+        env.setProperty("jwt.keys", "default:first-secret");
+        keyring.reload();
+
+        SecurityKeyring.Keys after = keyring.getKeys();
+        Assert.assertNotSame(before, after);
+        Assert.assertEquals("second", after.getKeyId());
+        Assert.assertSame(after.getSigningKey(), keyring.verificationKey("second"));
+        // Old tokens still verified
+        Assert.assertEquals(before.getSigningKey(), keyring.verificationKey(null));
+        // Snapshot taken before reload is not changed
+        Assert.assertNull(before.getKeyId());
+    }
+
+    @Test
+    public void testUnchangedKeepsSnapshot() {
+        SecurityKeyring.Keys before = keyring.getKeys();
+        keyring.reload();
+        Assert.assertSame(before, keyring.getKeys());
+    }
+
+    @Test
+    public void testPasswordFileReloaded() throws Exception {
+        File f = File.createTempFile("jwt", ".secret");
+        try {
+            Files.write(f.toPath(), "file-secret\n".getBytes(StandardCharsets.UTF_8));
+            env.setProperty("jwt.password.file", f.getPath());
+            keyring.reload();
+            Assert.assertEquals(keyring.key("file-secret"), keyring.getSigningKey());
+
+            Files.write(f.toPath(), "rotated-secret".getBytes(StandardCharsets.UTF_8));
+            keyring.reload();
+            Assert.assertEquals(keyring.key("rotated-secret"), keyring.getSigningKey());
+        } finally {
+            f.delete();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.huksley.app.system;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import com.github.huksley.app.system.SecurityConfigurer.ExtendedWebAuthenticationDetails;
+
+public class TestSecurityLoginThrottle {
+    SecurityLoginThrottle throttle;
+
+    @Before
+    public void setupThrottle() {
+        throttle = new SecurityLoginThrottle();
+        throttle.env = new MockEnvironment()
+            .withProperty("security.login.throttle.user.burst", "3")
+            .withProperty("security.login.throttle.ip.burst", "5")
+            .withProperty("security.login.throttle.keys", "64")
+            .withProperty("security.login.throttle.stripes", "4");
+        throttle.init();
+    }
+
+    UsernamePasswordAuthenticationToken attempt(String name, String password, String ip) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Real-IP", ip);
+        UsernamePasswordAuthenticationToken t = new UsernamePasswordAuthenticationToken(name, password);
+        t.setDetails(new ExtendedWebAuthenticationDetails(request));
+        return t;
+    }
+
+    int failures(String name, String ip, int attempts) {
+        int throttled = 0;
+        for (int i = 0; i < attempts; i++) {
+            UsernamePasswordAuthenticationToken t = attempt(name, "wrong" + i, ip);
+            try {
+                throttle.check(t);
+                throttle.failure(t);
+            } catch (LoginThrottledException e) {
+                throttled++;
+            }
+        }
+        return throttled;
+    }
+
+    @Test
+    public void testUserLimit() {
+        Assert.assertEquals(2, failures("alice", "10.0.0.1", 5));
+        // Other user from same address is fine
+        Assert.assertEquals(0, failures("bob", "10.0.0.1", 2));
+    }
+
+    @Test
+    public void testAddressLimit() {
+        int throttled = 0;
+        for (int i = 0; i < 8; i++) {
+            throttled += failures("user" + i, "10.0.0.2", 1);
+        }
+        Assert.assertEquals(3, throttled);
+    }
+
+    @Test
+    public void testSuccessNotCounted() {
+        for (int i = 0; i < 10; i++) {
+            UsernamePasswordAuthenticationToken t = attempt("alice", "secret", "10.0.0.3");
+            throttle.check(t);
+            throttle.success(t);
+        }
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void testRecentlyFailed() {
+        UsernamePasswordAuthenticationToken t = attempt("alice", "wrong", "10.0.0.4");
+        throttle.check(t);
+        throttle.failure(t);
+        throttle.check(attempt("alice", "wrong", "10.0.0.5"));
+    }
+
+    @Test
+    public void testBoundedKeys() {
+        failures("many", "10.0.0.6", 1);
+        for (int i = 0; i < 10000; i++) {
+            throttle.acquire("u:" + i, throttle.user);
+        }
+        int total = 0;
+        for (SecurityLoginThrottle.Stripe s: throttle.stripes) {
+            total += s.size();
+        }
+        Assert.assertTrue(total <= 64);
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.huksley.app.system;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Redis replaced by in-memory sorted set, which can be made unavailable.
+ */
+public class TestSecurityRevocationBusRedis {
+    final Map<String, Double> zset = new ConcurrentHashMap<>();
+    volatile boolean down;
+    SecurityRevocationBusRedis bus;
+
+    class FakeJedis extends Jedis {
+        void check() {
+            if (down) {
+                throw new JedisConnectionException("Connection refused");
+            }
+        }
+
+        @Override
+        public Long zadd(String key, double score, String member) {
+            check();
+            zset.put(member, score);
+            return 1L;
+        }
+
+        @Override
+        public Long publish(String channel, String message) {
+            check();
+            return 0L;
+        }
+
+        @Override
+        public Long zremrangeByScore(String key, double min, double max) {
+            check();
+            return 0L;
+        }
+
+        @Override
+        public Set<Tuple> zrangeByScoreWithScores(String key, double min, double max) {
+            check();
+            Set<Tuple> s = new TreeSet<>();
+            zset.forEach((k, v) -> s.add(new Tuple(k, v)));
+            return s;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void setupBus() {
+        bus = new SecurityRevocationBusRedis();
+        bus.pool = new JedisPool() {
+            @Override
+            public Jedis getResource() {
+                if (down) {
+                    throw new JedisConnectionException("Could not get a resource from the pool");
+                }
+                return new FakeJedis();
+            }
+        };
+        bus.channel = "auth:revoked";
+        bus.key = "auth:revoked:set";
+    }
+
+    @Test
+    public void testSubscribeReplaysRevoked() {
+        long exp = System.currentTimeMillis() + 60000;
+        bus.publish("a", exp);
+        Map<String, Long> got = new ConcurrentHashMap<>();
+        bus.subscribe(got::put);
+        Assert.assertEquals(Long.valueOf(exp), got.get("a"));
+    }
+
+    @Test
+    public void testPublishRetriedWhileDown() {
+        long exp = System.currentTimeMillis() + 60000;
+        down = true;
+        bus.publish("a", exp);
+        bus.retry();
+        Assert.assertTrue(zset.isEmpty());
+        Assert.assertEquals(1, bus.unpublished.size());
+
+        down = false;
+        bus.retry();
+        Assert.assertTrue(zset.containsKey("a"));
+        Assert.assertTrue(bus.unpublished.isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.util.StreamUtils;
+
+public class TestSecurityTemplates {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    SecurityTemplates templates(boolean reload) {
+        SecurityTemplates t = new SecurityTemplates();
+        t.env = new MockEnvironment()
+            .withProperty("security.auth.templates.reload", String.valueOf(reload))
+            .withProperty("security.auth.templates.dir", tmp.getRoot().getAbsolutePath());
+        t.init();
+        return t;
+    }
+
+    @Test
+    public void testServe() throws Exception {
+        StringBuilder html = new StringBuilder("<html><head><title>Login</title></head><body>");
+        for (int i = 0; i < 100; i++) {
+            html.append("<p>Please log in</p>");
+        }
+        Files.write(tmp.newFile("login.html").toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+        SecurityTemplates templates = templates(false);
+        SecurityTemplates.Template t = templates.get(SecurityTemplates.LOGIN);
+        String expected = html.toString().replace("<title>", "<BASE HREF=\"/auth/login.html\"><title>");
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        templates.serve(t, request, response);
+        Assert.assertEquals(expected, response.getContentAsString());
+        Assert.assertEquals(t.getEtag(), response.getHeader("ETag"));
+
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        response = new MockHttpServletResponse();
+        templates.serve(t, request, response);
+        Assert.assertEquals("gzip", response.getHeader("Content-Encoding"));
+        Assert.assertNotEquals(t.getEtag(), response.getHeader("ETag"));
+        byte[] body = StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray())));
+        Assert.assertEquals(expected, new String(body, StandardCharsets.UTF_8));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", t.getEtag());
+        response = new MockHttpServletResponse();
+        templates.serve(t, request, response);
+        Assert.assertEquals(304, response.getStatus());
+        Assert.assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File f = tmp.newFile("user.html");
+        Files.write(f.toPath(), "<title>A</title>".getBytes(StandardCharsets.UTF_8));
+        SecurityTemplates cached = templates(false);
+        SecurityTemplates reloaded = templates(true);
+        SecurityTemplates.Template t = reloaded.get(SecurityTemplates.USER);
+        Assert.assertSame(t, reloaded.get(SecurityTemplates.USER));
+
+        Files.write(f.toPath(), "<title>B</title>".getBytes(StandardCharsets.UTF_8));
+        f.setLastModified(f.lastModified() + 2000);
+        Assert.assertTrue(new String(reloaded.get(SecurityTemplates.USER).getBody(), StandardCharsets.UTF_8).contains("B"));
+        Assert.assertTrue(new String(cached.get(SecurityTemplates.USER).getBody(), StandardCharsets.UTF_8).contains("A"));
+    }
+
+    @Test
+    public void testCss() throws Exception {
+        Files.write(tmp.newFile("template.css").toPath(), ".role_USER { display: none; }".getBytes(StandardCharsets.UTF_8));
+        SecurityTemplates templates = templates(false);
+        SecurityTemplates.Template user = templates.css(AuthorityUtils.createAuthorityList("ROLE_USER"));
+        Assert.assertSame(user, templates.css(AuthorityUtils.createAuthorityList("ROLE_USER")));
+        SecurityTemplates.Template admin = templates.css(AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER"));
+        Assert.assertSame(admin, templates.css(AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN")));
+        Assert.assertNotEquals(user.getEtag(), admin.getEtag());
+
+        String s = new String(admin.getBody(), StandardCharsets.UTF_8);
+        Assert.assertTrue(s.startsWith(".role_USER { display: none; }\n\n.authtype_test {"));
+        Assert.assertTrue(s.contains(".role_ADMIN {\n    display: block;\n}"));
+        Assert.assertFalse(new String(templates.css(null).getBody(), StandardCharsets.UTF_8).contains(".role_USER {\n"));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        templates.serve(user, new MockHttpServletRequest(), response);
+        Assert.assertEquals("private, max-age=3600", response.getHeader("Cache-Control"));
+        Assert.assertEquals(user.getEtag(), response.getHeader("ETag"));
+    }
+
+    @Test
+    public void testMissingTemplate() {
+        SecurityTemplates templates = templates(false);
+        try {
+            templates.read("missing.html");
+            Assert.fail("Expected missing template to fail");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Auth template not found: missing.html", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.huksley.app.system;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import com.github.huksley.app.system.SecurityConfigurer.TokenAuthentication;
+
+public class TestSecurityTokenCache {
+    SecurityTokenCache cache;
+
+    @Before
+    public void setupCache() {
+        cache = new SecurityTokenCache() {
+            {
+                env = new MockEnvironment().withProperty("security.token.cache.size", "2");
+            }
+        };
+        cache.init();
+    }
+
+    TokenAuthentication auth(String token, long ttl) {
+        return new TokenAuthentication("test", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")), ttl, token);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        Assert.assertNull(cache.get("a"));
+        TokenAuthentication a = auth("a", 60000);
+        cache.put("a", a);
+        Assert.assertSame(a, cache.get("a"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testSharedImmutable() {
+        TokenAuthentication a = auth("a", 60000);
+        Assert.assertTrue(a.isAuthenticated());
+        try {
+            a.setAuthenticated(false);
+            Assert.fail("Cached authentication must not be changed");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            a.setDetails("other");
+            Assert.fail("Cached authentication must not be changed");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        Assert.assertTrue(a.isAuthenticated());
+        Assert.assertNull(a.getDetails());
+    }
+
+    @Test
+    public void testNeverOutlivesExpiration() {
+        cache.put("expired", auth("expired", -1));
+        Assert.assertNull(cache.get("expired"));
+    }
+
+    @Test
+    public void testBounded() {
+        cache.put("a", auth("a", 60000));
+        cache.put("b", auth("b", 60000));
+        cache.put("c", auth("c", 60000));
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+    }
+}
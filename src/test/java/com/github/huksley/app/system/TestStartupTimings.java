@@ -0,0 +1,69 @@
+package com.github.huksley.app.system;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.AbstractFactoryBean;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+public class TestStartupTimings {
+    @Configuration
+    static class Beans {
+        @Bean
+        public StartupTimings timings() {
+            return new StartupTimings();
+        }
+
+        // Created first, so slow is created as its dependency
+        @Bean
+        public String parent(String slow, StringBuilder widget) throws InterruptedException {
+            Thread.sleep(50);
+            return "parent of " + slow + widget;
+        }
+
+        /**
+         * Product is post processed with factory bean name, without instantiation callback
+         */
+        @Bean
+        public FactoryBean<StringBuilder> widget() {
+            return new AbstractFactoryBean<StringBuilder>() {
+                @Override
+                public Class<?> getObjectType() {
+                    return StringBuilder.class;
+                }
+
+                @Override
+                protected StringBuilder createInstance() {
+                    return new StringBuilder("widget");
+                }
+            };
+        }
+
+        @Bean
+        public String slow() throws InterruptedException {
+            Thread.sleep(100);
+            return "slow";
+        }
+    }
+
+    @Test
+    public void testTimings() {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(Beans.class)) {
+            StartupTimings timings = ctx.getBean(StartupTimings.class);
+            StartupTimings.Timing slow = find(timings, "slow");
+            StartupTimings.Timing parent = find(timings, "parent");
+            Assert.assertTrue(slow.getSelf() >= 100);
+            // Dependency created meanwhile counts for total only
+            Assert.assertTrue(parent.getTotal() >= 150);
+            Assert.assertTrue(parent.getSelf() >= 50 && parent.getSelf() < 100);
+            Assert.assertEquals("slow", timings.top(1).get(0).getName());
+            Assert.assertNull(timings.creation.get());
+        }
+    }
+
+    StartupTimings.Timing find(StartupTimings timings, String name) {
+        return timings.top(timings.size()).stream().filter(t -> t.getName().equals(name)).findFirst().get();
+    }
+}
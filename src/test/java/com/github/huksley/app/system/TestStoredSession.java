@@ -0,0 +1,207 @@
+package com.github.huksley.app.system;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.InvalidClassException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import com.github.huksley.app.system.SecurityConfigurer.TokenAuthentication;
+
+public class TestStoredSession {
+    List<String> reads;
+    List<String> writes;
+    SessionStoreMemory store;
+    SessionRepositoryFilter filter;
+
+    @Before
+    public void setupStore() {
+        reads = new ArrayList<>();
+        writes = new ArrayList<>();
+        store = new SessionStoreMemory() {
+            @Override
+            public byte[] getAttribute(String id, String name) {
+                reads.add(name);
+                return super.getAttribute(id, name);
+            }
+
+            @Override
+            public void save(String id, Meta meta, Map<String, byte[]> changed, Collection<String> removed) {
+                writes.addAll(changed.keySet());
+                super.save(id, meta, changed, removed);
+            }
+        };
+        filter = new SessionRepositoryFilter(store, "SESSION", 3600, 60000);
+    }
+
+    interface Handler {
+        void handle(HttpServletRequest request) throws Exception;
+    }
+
+    String request(String session, Handler h) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (session != null) {
+            request.setCookies(new Cookie("SESSION", session));
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, resp) -> {
+            try {
+                h.handle((HttpServletRequest) req);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        filter.doFilter(request, response, chain);
+        Cookie c = response.getCookie("SESSION");
+        return c != null ? c.getValue() : session;
+    }
+
+    @Test
+    public void testLazyLoadAndDirtyWrite() throws Exception {
+        String id = request(null, r -> {
+            r.getSession().setAttribute("a", "A");
+            r.getSession().setAttribute("b", 1L);
+        });
+        Assert.assertNotNull(id);
+        Assert.assertEquals(2, writes.size());
+
+        writes.clear();
+        request(id, r -> Assert.assertEquals("A", r.getSession(false).getAttribute("a")));
+        Assert.assertEquals("[a]", reads.toString());
+        Assert.assertTrue(writes.isEmpty());
+
+        request(id, r -> r.getSession(false).setAttribute("b", 2L));
+        Assert.assertEquals("[b]", writes.toString());
+        request(id, r -> Assert.assertEquals(2L, r.getSession(false).getAttribute("b")));
+
+        request(id, r -> r.getSession(false).invalidate());
+        request(id, r -> Assert.assertNull(r.getSession(false)));
+    }
+
+    @Test
+    public void testChangeSessionId() throws Exception {
+        String id = request(null, r -> r.getSession().setAttribute("a", "A"));
+        String changed = request(id, r -> r.changeSessionId());
+        Assert.assertNotEquals(id, changed);
+        Assert.assertNull(store.load(id));
+        request(changed, r -> Assert.assertEquals("A", r.getSession(false).getAttribute("a")));
+    }
+
+    @Test
+    public void testSerializeSecurityContext() {
+        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken("test", "secret",
+            AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+        byte[] b = SessionSerializer.serialize(new SecurityContextImpl(auth));
+        SecurityContext c = (SecurityContext) SessionSerializer.deserialize(b);
+        Authentication a = c.getAuthentication();
+        Assert.assertEquals("test", a.getName());
+        Assert.assertNull(a.getCredentials());
+        Assert.assertTrue(a.isAuthenticated());
+        Assert.assertEquals(AuthoritySet.of("ROLE_USER", "ROLE_ADMIN"), AuthoritySet.of(a.getAuthorities()));
+
+        Throwable e = (Throwable) SessionSerializer.deserialize(SessionSerializer.serialize(new BadCredentialsException("Invalid")));
+        Assert.assertEquals(BadCredentialsException.class, e.getClass());
+        Assert.assertEquals("Invalid", e.getMessage());
+    }
+
+    @Test
+    public void testErrorTypesAllowed() throws Exception {
+        Throwable e = (Throwable) SessionSerializer.deserialize(SessionSerializer.serialize(new LoginThrottledException("Throttled")));
+        Assert.assertEquals(LoginThrottledException.class, e.getClass());
+        e = (Throwable) SessionSerializer.deserialize(SessionSerializer.serialize(
+            new BadCredentialsException("Invalid", new IllegalStateException("Cause"))));
+        Assert.assertEquals(BadCredentialsException.class, e.getClass());
+        Assert.assertEquals(RuntimeException.class, e.getCause().getClass());
+        Assert.assertEquals("java.lang.IllegalStateException: Cause", e.getCause().getMessage());
+
+        // Unknown class name is kept as text, never instantiated
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(bos);
+        os.writeByte(SessionSerializer.VERSION);
+        os.writeByte(SessionSerializer.ERROR);
+        os.writeUTF(Instantiated.class.getName());
+        SessionSerializer.write(os, "Message");
+        os.writeBoolean(false);
+        e = (Throwable) SessionSerializer.deserialize(bos.toByteArray());
+        Assert.assertEquals(AuthenticationServiceException.class, e.getClass());
+        Assert.assertEquals(Instantiated.class.getName() + ": Message", e.getMessage());
+        Assert.assertEquals(0, Instantiated.count);
+    }
+
+    public static class Instantiated extends AuthenticationException {
+        private static final long serialVersionUID = 1L;
+        static int count;
+
+        public Instantiated(String msg) {
+            super(msg);
+            count++;
+        }
+    }
+
+    @Test
+    public void testJavaSerializationAllowlist() {
+        HashMap<String, Integer> m = new HashMap<>();
+        m.put("a", 1);
+        Assert.assertEquals(m, SessionSerializer.deserialize(SessionSerializer.serialize(m)));
+        Assert.assertArrayEquals(new long[] { 1, 2 }, (long[]) SessionSerializer.deserialize(SessionSerializer.serialize(new long[] { 1, 2 })));
+
+        byte[] b = SessionSerializer.serialize(new File("file"));
+        try {
+            SessionSerializer.deserialize(b);
+            Assert.fail("Expected class outside of allowlist to be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof InvalidClassException);
+        }
+        Assert.assertTrue(SessionSerializer.isAllowed("[Ljava.lang.String;"));
+        Assert.assertFalse(SessionSerializer.isAllowed("[Ljava.io.File;"));
+        Assert.assertFalse(SessionSerializer.isAllowed("java.lang.invoke.SerializedLambda"));
+        Assert.assertFalse(SessionSerializer.isAllowed("["));
+    }
+
+    @Test
+    public void testSerializeTokenAuthentication() {
+        TokenAuthentication auth = new TokenAuthentication("test", AuthorityUtils.createAuthorityList("ROLE_USER"),
+            60000, "token", 1000, "id", 500);
+        TokenAuthentication a = (TokenAuthentication) SessionSerializer.deserialize(SessionSerializer.serialize(auth));
+        Assert.assertEquals("test", a.getName());
+        Assert.assertEquals("token", a.getToken());
+        Assert.assertEquals(auth.getExpiresAt(), a.getExpiresAt());
+        Assert.assertEquals(1000, a.getIssuedAt());
+        Assert.assertEquals("id", a.getId());
+        Assert.assertEquals(500, a.getLoginAt());
+        Assert.assertEquals(AuthoritySet.of("ROLE_USER"), a.getAuthorities());
+    }
+
+    @Test
+    public void testNewSessionIsNew() throws Exception {
+        String id = request(null, r -> Assert.assertTrue(r.getSession().isNew()));
+        request(id, r -> {
+            HttpSession s = r.getSession(false);
+            Assert.assertFalse(s.isNew());
+            Assert.assertTrue(r.isRequestedSessionIdValid());
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.huksley.app.system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestThreadStates {
+    @Test
+    public void testPlatformThread() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        ThreadStates<StringBuilder> states = new ThreadStates<>(() -> {
+            created.incrementAndGet();
+            return new StringBuilder();
+        });
+        Assert.assertFalse(ThreadStates.isVirtual());
+        StringBuilder a = states.acquire();
+        states.release(a);
+        Assert.assertSame(a, states.acquire());
+        states.release(a);
+
+        StringBuilder[] other = new StringBuilder[1];
+        Thread t = new Thread(() -> other[0] = states.acquire());
+        t.start();
+        t.join();
+        Assert.assertNotSame(a, other[0]);
+        Assert.assertEquals(2, created.get());
+    }
+
+    @Test
+    public void testPooled() {
+        AtomicInteger created = new AtomicInteger();
+        List<StringBuilder> discarded = new ArrayList<>();
+        // As if every caller is virtual thread
+        ThreadStates<StringBuilder> states = new ThreadStates<>(() -> {
+            created.incrementAndGet();
+            return new StringBuilder();
+        }, discarded::add, 2, () -> true);
+        StringBuilder a = states.acquire();
+        StringBuilder b = states.acquire();
+        Assert.assertNotSame(a, b);
+        states.release(a);
+        // Borrowed from pool, not from thread local
+        Assert.assertSame(a, states.acquire());
+        states.release(a);
+        Assert.assertEquals(2, created.get());
+        Assert.assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    public void testPoolBound() {
+        List<StringBuilder> discarded = new ArrayList<>();
+        ThreadStates<StringBuilder> states = new ThreadStates<>(StringBuilder::new, discarded::add, 2, () -> true);
+        StringBuilder[] l = { states.acquire(), states.acquire(), states.acquire() };
+        for (StringBuilder s: l) {
+            states.release(s);
+        }
+        Assert.assertEquals(2, states.pool.size());
+        Assert.assertEquals(2, states.pooled.get());
+        Assert.assertEquals(1, discarded.size());
+        Assert.assertSame(l[2], discarded.get(0));
+    }
+
+    @Test
+    public void testDiscardedDeflaterIsEnded() {
+        SecurityTokenMinter minter = new SecurityTokenMinter();
+        SecurityTokenMinter.ThreadState st = new SecurityTokenMinter.ThreadState();
+        minter.states.discard.accept(st);
+        try {
+            st.deflater.getAdler();
+            Assert.fail("Deflater not ended");
+        } catch (NullPointerException e) {
+            // Expected, deflater is closed
+        }
+    }
+}
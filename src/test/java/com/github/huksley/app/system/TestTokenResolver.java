@@ -0,0 +1,45 @@
+package com.github.huksley.app.system;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class TestTokenResolver {
+    @Test
+    public void testCookieHeader() {
+        Assert.assertEquals("abc:123", TokenResolver.cookie("AuthToken=abc:123", "AuthToken"));
+        Assert.assertEquals("abc:123", TokenResolver.cookie("JSESSIONID=x; AuthToken=abc:123; other=1", "AuthToken"));
+        Assert.assertEquals("abc", TokenResolver.cookie("a=1;AuthToken=\"abc\"", "AuthToken"));
+        Assert.assertNull(TokenResolver.cookie("XAuthToken=abc; AuthTokenX=abc", "AuthToken"));
+        Assert.assertNull(TokenResolver.cookie("", "AuthToken"));
+    }
+
+    @Test
+    public void testResolveOnce() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Cookie", "AuthToken=abc:" + (System.currentTimeMillis() - 1000));
+        TokenResolver.ResolvedToken tok = TokenResolver.resolve(request);
+        Assert.assertTrue(tok.isCookie());
+        Assert.assertTrue(tok.isExpired());
+        Assert.assertSame(tok, TokenResolver.resolve(request));
+
+        request = new MockHttpServletRequest();
+        request.addHeader(SecurityConfigurer.HEADER_AUTH, "abc");
+        request.addHeader("Cookie", "AuthToken=def");
+        tok = TokenResolver.resolve(request);
+        Assert.assertEquals(TokenResolver.Source.HEADER, tok.getSource());
+        Assert.assertEquals(0, tok.getExpiration());
+        Assert.assertFalse(tok.isExpired());
+
+        Assert.assertNull(TokenResolver.resolve(new MockHttpServletRequest()));
+    }
+
+    @Test
+    public void testExpirationOverflow() {
+        Assert.assertEquals(Long.MAX_VALUE, TokenResolver.expiration("abc:9223372036854775807"));
+        Assert.assertEquals(0, TokenResolver.expiration("abc:9223372036854775808"));
+        Assert.assertEquals(0, TokenResolver.expiration("abc:9223372036854775809"));
+        Assert.assertEquals(0, TokenResolver.expiration("abc:92233720368547758070"));
+        Assert.assertEquals(0, TokenResolver.expiration("abc:12x"));
+    }
+}
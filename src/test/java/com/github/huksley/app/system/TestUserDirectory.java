@@ -0,0 +1,51 @@
+package com.github.huksley.app.system;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestUserDirectory {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws Exception {
+        Path source = tmp.newFile("users.txt").toPath();
+        try (BufferedWriter w = Files.newBufferedWriter(source, StandardCharsets.UTF_8)) {
+            w.write("# comment\n");
+            w.write("alice:$2a$04$hash1:USER,ADMIN\n");
+            w.write("bob:$2a$04$hash2\n");
+            w.write("\n");
+            w.write("alice:$2a$04$hash3:USER,ADMIN\n");
+            for (int i = 0; i < 10000; i++) {
+                w.write("user" + i + ":$2a$04$x" + i + ":USER\n");
+            }
+        }
+        Path index = tmp.getRoot().toPath().resolve("users.idx");
+        Assert.assertEquals(10002, UserDirectory.build(source, index));
+
+        UserDirectory d = UserDirectory.open(index);
+        Assert.assertEquals(10002, d.size());
+        UserDirectory.Entry alice = d.lookup("alice");
+        Assert.assertEquals("$2a$04$hash3", alice.getHash());
+        Assert.assertEquals(AuthoritySet.of("ROLE_USER", "ROLE_ADMIN"), alice.getRoles());
+        Assert.assertEquals(AuthoritySet.of("ROLE_USER"), d.lookup("bob").getRoles());
+        Assert.assertEquals("$2a$04$x9999", d.lookup("user9999").getHash());
+        Assert.assertNull(d.lookup("carol"));
+        Assert.assertNull(d.lookup("user10000"));
+
+        // Rebuild swaps file, old mapping stays valid
+        Files.write(source, "carol:$2a$04$hash4:ADMIN\n".getBytes(StandardCharsets.UTF_8));
+        UserDirectory.build(source, index);
+        Assert.assertNotNull(d.lookup("alice"));
+        UserDirectory d2 = UserDirectory.open(index);
+        Assert.assertNull(d2.lookup("alice"));
+        Assert.assertEquals(AuthoritySet.of("ROLE_ADMIN"), d2.lookup("carol").getRoles());
+    }
+}